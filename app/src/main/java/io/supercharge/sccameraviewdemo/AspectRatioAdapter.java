@@ -29,18 +29,10 @@ public class AspectRatioAdapter extends BaseAdapter {
 
     public String getFormattedRatioString(AspectRatio aspectRatio) {
         String ratioString = aspectRatio.getWidth() + "x" + aspectRatio.getHeight();
-        int greatestCommonDivisor = getGreatestCommonDivisor(aspectRatio.getWidth(), aspectRatio.getHeight());
-        ratioString += "\t\t\t" + aspectRatio.getWidth() / greatestCommonDivisor + " : " + aspectRatio.getHeight() / greatestCommonDivisor;
+        ratioString += "\t\t\t" + aspectRatio.getNumerator() + " : " + aspectRatio.getDenominator();
         return ratioString;
     }
 
-    private int getGreatestCommonDivisor(int a, int b) {
-        if (b == 0) {
-            return Math.abs(a);
-        }
-        return getGreatestCommonDivisor(b, a % b);
-    }
-
     public void showDialog() {
         final int checkedItem = cameraView.getSelectedRatioIdx();
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
@@ -6,15 +6,18 @@ import android.os.Bundle;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
 
 import io.supercharge.sccameraview.BaseCameraView;
-import io.supercharge.sccameraview.OnImageSavedListener;
+import io.supercharge.sccameraview.ImageSaveResult;
+import io.supercharge.sccameraview.OnImageResultListener;
 import io.supercharge.sccameraview.SCCameraView;
 
 public class MainActivity extends AppCompatActivity {
     private static final int PERMISSION_REQUEST_CODE = 1;
+    private static final String LOG_TAG = "SCCameraViewDemo";
 
     private SCCameraView scCameraView;
     private BaseCameraView cameraView;
@@ -80,11 +83,17 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        cameraView.setImageSavedListener(new OnImageSavedListener() {
+        cameraView.setImageSavedListener(new OnImageResultListener() {
             @Override
             public void onImageSaved() {
                 cameraView.startPreview();
             }
+
+            @Override
+            public void onImageSaved(ImageSaveResult result) {
+                Log.d(LOG_TAG, "Saved " + result.getFile() + " in "
+                        + result.getWriteTimeNanos() / 1000000 + " ms");
+            }
         });
     }
 
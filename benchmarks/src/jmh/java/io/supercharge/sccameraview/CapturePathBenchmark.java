@@ -0,0 +1,128 @@
+package io.supercharge.sccameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the camera lifecycle and still capture of the views against the {@link FakeCameraBackend}
+ * with zero latencies, so the numbers are the overhead of the capture path itself: the state
+ * machine hops, the camera thread, the metrics reporting and the picture delivery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CapturePathBenchmark {
+
+    private final Object lock = new Object();
+    private FakeCameraBackend backend;
+    private BackendCameraController controller;
+    private CameraStateMachine stateMachine;
+    private CameraState state = CameraState.CLOSED;
+    private long streamingCount;
+    private long pictureCount;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        backend = new FakeCameraBackend();
+        backend.addCamera("0");
+        backend.addCamera("1");
+        controller = new BackendCameraController(backend);
+        controller.setMetricsListener(new CameraMetricsListener() {
+            @Override
+            public void onCameraEvent(CameraEvent event) {
+                // the events are reported as to the listener of a view, then dropped
+            }
+        });
+        controller.setPictureListener(new BackendCameraController.PictureListener() {
+            @Override
+            public void onPictureTaken(ByteBuffer jpeg, Runnable releaseCallback) {
+                synchronized (lock) {
+                    pictureCount++;
+                    lock.notifyAll();
+                }
+            }
+        });
+        stateMachine = controller.getStateMachine();
+        stateMachine.setListener(new CameraStateMachine.Listener() {
+            @Override
+            public void onStateChanged(CameraState newState) {
+                synchronized (lock) {
+                    state = newState;
+                    if (newState == CameraState.STREAMING) {
+                        streamingCount++;
+                    }
+                    lock.notifyAll();
+                }
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public void openConfigureClose() throws InterruptedException {
+        stateMachine.requestOpen();
+        awaitState(CameraState.STREAMING);
+        stateMachine.requestClose();
+        awaitState(CameraState.CLOSED);
+    }
+
+    @Benchmark
+    public void switchCamera() throws InterruptedException {
+        stateMachine.requestOpen();
+        awaitState(CameraState.STREAMING);
+        switchTo("1");
+        switchTo("0");
+    }
+
+    @Benchmark
+    public void takePicture() throws InterruptedException {
+        stateMachine.requestOpen();
+        awaitState(CameraState.STREAMING);
+        long expected;
+        synchronized (lock) {
+            expected = pictureCount + 1;
+        }
+        controller.takePicture();
+        synchronized (lock) {
+            while (pictureCount < expected) {
+                lock.wait();
+            }
+        }
+    }
+
+    private void switchTo(String cameraId) throws InterruptedException {
+        long expected;
+        synchronized (lock) {
+            expected = streamingCount + 1;
+        }
+        backend.selectCamera(cameraId);
+        stateMachine.requestReopen();
+        // the camera passes through closed too quickly to wait for it, only the new stream counts
+        synchronized (lock) {
+            while (streamingCount < expected) {
+                lock.wait();
+            }
+        }
+    }
+
+    private void awaitState(CameraState expected) throws InterruptedException {
+        synchronized (lock) {
+            while (state != expected) {
+                lock.wait();
+            }
+        }
+    }
+}
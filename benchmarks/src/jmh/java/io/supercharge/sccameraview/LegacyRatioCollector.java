@@ -0,0 +1,35 @@
+package io.supercharge.sccameraview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The ratio collection the library used before {@link RatioTable}: boxed doubles deduplicated with
+ * List.contains and a sort that compared the ratios as doubles. Kept as the benchmark baseline.
+ */
+final class LegacyRatioCollector {
+
+    private LegacyRatioCollector() {
+    }
+
+    static List<int[]> collect(int[] widths, int[] heights) {
+        final List<int[]> aspectRatios = new ArrayList<>();
+        final List<Double> ratioList = new ArrayList<>();
+        for (int i = 0; i < widths.length; i++) {
+            double ratio = (double) widths[i] / (double) heights[i];
+            if (!ratioList.contains(ratio)) {
+                ratioList.add(ratio);
+                aspectRatios.add(new int[]{widths[i], heights[i]});
+            }
+        }
+        Collections.sort(aspectRatios, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] p1, int[] p2) {
+                return Double.compare((double) p1[0] / p1[1], (double) p2[0] / p2[1]);
+            }
+        });
+        return aspectRatios;
+    }
+}
@@ -0,0 +1,56 @@
+package io.supercharge.sccameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Collects the distinct aspect ratios of recorded size tables, as it happens on every camera open
+ * and switch. Run with {@code ./gradlew -Pbenchmarks :benchmarks:jmh}.
+ */
+@State(Scope.Benchmark)
+public class RatioTableBenchmark {
+
+    @Param({"nexus5", "pixelBack", "pixelFront", "large"})
+    public String table;
+
+    private int[] widths;
+    private int[] heights;
+
+    @Setup
+    public void setUp() {
+        int[][] sizes = SizeTables.get(table);
+        widths = new int[sizes.length];
+        heights = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            widths[i] = sizes[i][0];
+            heights[i] = sizes[i][1];
+        }
+
+        // both implementations have to agree, otherwise the numbers mean nothing
+        int[] distinct = RatioTable.distinctRatios(widths, heights);
+        List<int[]> legacy = LegacyRatioCollector.collect(widths, heights);
+        if (distinct.length != legacy.size()) {
+            throw new IllegalStateException("Ratio count differs for " + table);
+        }
+        for (int i = 0; i < distinct.length; i++) {
+            if (widths[distinct[i]] != legacy.get(i)[0] || heights[distinct[i]] != legacy.get(i)[1]) {
+                throw new IllegalStateException("Ratio " + i + " differs for " + table);
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] distinctRatios() {
+        return RatioTable.distinctRatios(widths, heights);
+    }
+
+    @Benchmark
+    public List<int[]> legacyDistinctRatios() {
+        return LegacyRatioCollector.collect(widths, heights);
+    }
+}
@@ -0,0 +1,62 @@
+package io.supercharge.sccameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * The steps between reading the size table of a camera and configuring its outputs: bucketing the
+ * sizes into aspect ratios as collectAspectRatios does, picking the ratio of the screen as
+ * setAspectRatioByScreenSize does and choosing the preview and still sizes of that ratio. Run with
+ * {@code ./gradlew -Pbenchmarks :benchmarks:jmh}.
+ */
+@State(Scope.Benchmark)
+public class SizeSelectionBenchmark {
+
+    // a 1080x2160 screen in portrait, which no table has exactly
+    private static final double SCREEN_RATIO = 2160.0 / 1080;
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2160;
+
+    @Param({"nexus5", "pixelBack", "pixelFront", "large"})
+    public String table;
+
+    private int[] widths;
+    private int[] heights;
+    private List<AspectRatio> aspectRatios;
+    private AspectRatio selectedRatio;
+
+    @Setup
+    public void setUp() {
+        int[][] sizes = SizeTables.get(table);
+        widths = new int[sizes.length];
+        heights = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            widths[i] = sizes[i][0];
+            heights[i] = sizes[i][1];
+        }
+        aspectRatios = AspectRatio.fromSizes(widths, heights, CameraCapabilityCache.DEFAULT_RATIO_TOLERANCE);
+        selectedRatio = aspectRatios.get(SizeSelector.findClosestIndex(aspectRatios, SCREEN_RATIO));
+    }
+
+    @Benchmark
+    public List<AspectRatio> collectAspectRatios() {
+        return AspectRatio.fromSizes(widths, heights, CameraCapabilityCache.DEFAULT_RATIO_TOLERANCE);
+    }
+
+    @Benchmark
+    public int closestScreenRatio() {
+        return SizeSelector.findClosestIndex(aspectRatios, SCREEN_RATIO);
+    }
+
+    @Benchmark
+    public int selectSizes() {
+        int previewIndex = SizeSelector.choosePreviewSize(selectedRatio, VIEW_WIDTH, VIEW_HEIGHT);
+        int pictureIndex = SizeSelector.chooseLargestSize(selectedRatio, 0, 0);
+        return previewIndex + pictureIndex;
+    }
+}
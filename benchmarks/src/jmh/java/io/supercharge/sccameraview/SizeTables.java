@@ -0,0 +1,61 @@
+package io.supercharge.sccameraview;
+
+/**
+ * Camera size tables as {width, height} pairs, in the order the camera APIs report them. The
+ * device tables are transcribed from published supported size lists; add dumps of the devices
+ * you care about here.
+ */
+final class SizeTables {
+
+    // Camera.Parameters.getSupportedPreviewSizes() of a Nexus 5 back camera
+    static final int[][] NEXUS_5 = {
+            {1920, 1080}, {1280, 960}, {1280, 720}, {960, 720}, {864, 480}, {800, 480}, {768, 432},
+            {720, 480}, {640, 480}, {576, 432}, {480, 320}, {384, 288}, {352, 288}, {320, 240},
+            {240, 160}, {176, 144}
+    };
+
+    // StreamConfigurationMap.getOutputSizes(SurfaceTexture.class) of a Pixel back camera
+    static final int[][] PIXEL_BACK = {
+            {1920, 1080}, {1600, 1200}, {1440, 1080}, {1280, 960}, {1280, 768}, {1280, 720},
+            {1024, 768}, {800, 600}, {864, 480}, {800, 480}, {720, 480}, {640, 480}, {640, 360},
+            {480, 360}, {480, 320}, {352, 288}, {320, 240}, {176, 144}
+    };
+
+    // StreamConfigurationMap.getOutputSizes(SurfaceTexture.class) of a Pixel front camera
+    static final int[][] PIXEL_FRONT = {
+            {1920, 1080}, {1440, 1080}, {1280, 960}, {1280, 720}, {1088, 1088}, {1024, 768},
+            {800, 600}, {720, 480}, {640, 480}, {352, 288}, {320, 240}, {176, 144}
+    };
+
+    private SizeTables() {
+    }
+
+    static int[][] get(String name) {
+        if ("nexus5".equals(name)) {
+            return NEXUS_5;
+        } else if ("pixelBack".equals(name)) {
+            return PIXEL_BACK;
+        } else if ("pixelFront".equals(name)) {
+            return PIXEL_FRONT;
+        } else if ("large".equals(name)) {
+            return large();
+        }
+        throw new IllegalArgumentException("Unknown size table " + name);
+    }
+
+    /**
+     * Every common ratio in many resolutions, the worst case for the list based dedup.
+     */
+    private static int[][] large() {
+        int[][] ratios = {{4, 3}, {16, 9}, {3, 2}, {5, 3}, {1, 1}, {11, 9}, {5, 4}, {18, 9}, {19, 9}, {21, 9}};
+        int steps = 40;
+        int[][] sizes = new int[ratios.length * steps][];
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < ratios.length; i++) {
+                int scale = 16 * (step + 1);
+                sizes[step * ratios.length + i] = new int[]{ratios[i][0] * scale, ratios[i][1] * scale};
+            }
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,58 @@
+package io.supercharge.sccameraview;
+
+/**
+ * Processing statistics of one {@link FrameAnalyzer}.
+ */
+public class AnalyzerStats {
+
+    private long processedFrames;
+    private long droppedFrames;
+    private long failedFrames;
+    private long lastProcessingNanos;
+    private long maxProcessingNanos;
+    private long totalProcessingNanos;
+
+    synchronized void recordProcessed(long processingNanos, boolean failed) {
+        processedFrames++;
+        if (failed) {
+            failedFrames++;
+        }
+        lastProcessingNanos = processingNanos;
+        totalProcessingNanos += processingNanos;
+        maxProcessingNanos = Math.max(maxProcessingNanos, processingNanos);
+    }
+
+    synchronized void recordDropped() {
+        droppedFrames++;
+    }
+
+    public synchronized long getProcessedFrames() {
+        return processedFrames;
+    }
+
+    /**
+     * Frames replaced by a newer frame before the analyzer got to them.
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Frames the analyzer threw an exception for.
+     */
+    public synchronized long getFailedFrames() {
+        return failedFrames;
+    }
+
+    public synchronized long getLastProcessingNanos() {
+        return lastProcessingNanos;
+    }
+
+    public synchronized long getMaxProcessingNanos() {
+        return maxProcessingNanos;
+    }
+
+    public synchronized long getAverageProcessingNanos() {
+        return processedFrames == 0 ? 0 : totalProcessingNanos / processedFrames;
+    }
+}
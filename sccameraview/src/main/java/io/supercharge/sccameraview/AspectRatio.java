@@ -1,43 +1,135 @@
 package io.supercharge.sccameraview;
 
-import android.hardware.Camera;
-import android.os.Build;
-import android.support.annotation.RequiresApi;
-import android.util.Size;
-
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 
+/**
+ * An aspect ratio as a reduced fraction, with every size of the camera that falls into it. Sizes
+ * whose ratios are within the tolerance of each other share one aspect ratio, e.g. 1920x1088 is
+ * kept with 1920x1080 under 16:9. The sizes are sorted by ascending area. Sizes of exactly the
+ * named ratio are preferred over the ones only within the tolerance.
+ */
 public class AspectRatio implements Serializable {
 
-    private double ratio;
-    private int width;
-    private int height;
+    private final int numerator;
+    private final int denominator;
+    private final int[] widths;
+    private final int[] heights;
+    private final int largestIndex;
+
+    AspectRatio(int numerator, int denominator, int[] widths, int[] heights) {
+        int gcd = RatioTable.gcd(numerator, denominator);
+        this.numerator = numerator / gcd;
+        this.denominator = denominator / gcd;
+        this.widths = widths;
+        this.heights = heights;
+        int largest = widths.length - 1;
+        while (largest > 0 && !isExact(largest)) {
+            largest--;
+        }
+        largestIndex = isExact(largest) ? largest : widths.length - 1;
+    }
+
+    /**
+     * Buckets the sizes into aspect ratios, sorted by ascending ratio. Every aspect ratio is named
+     * after the exact ratio most of its sizes have.
+     */
+    static List<AspectRatio> fromSizes(int[] widths, int[] heights, double tolerance) {
+        int[][] buckets = RatioTable.bucketRatios(widths, heights, tolerance);
+        List<AspectRatio> aspectRatios = new ArrayList<>(buckets.length);
+        for (int[] bucket : buckets) {
+            int[] bucketWidths = new int[bucket.length];
+            int[] bucketHeights = new int[bucket.length];
+            int dominant = 0;
+            int dominantCount = 0;
+            for (int i = 0; i < bucket.length; i++) {
+                bucketWidths[i] = widths[bucket[i]];
+                bucketHeights[i] = heights[bucket[i]];
+                int count = 0;
+                for (int j : bucket) {
+                    if (RatioTable.compare(widths[bucket[i]], heights[bucket[i]], widths[j], heights[j]) == 0) {
+                        count++;
+                    }
+                }
+                // ties go to the larger size, the bucket is sorted by area
+                if (count >= dominantCount) {
+                    dominant = bucket[i];
+                    dominantCount = count;
+                }
+            }
+            aspectRatios.add(new AspectRatio(widths[dominant], heights[dominant], bucketWidths, bucketHeights));
+        }
+        return aspectRatios;
+    }
 
-    AspectRatio(double ratio, int width, int height) {
-        this.ratio = ratio;
-        this.width = width;
-        this.height = height;
+    /**
+     * Buckets all sizes of the aspect ratios again with another tolerance.
+     */
+    static List<AspectRatio> rebucket(List<AspectRatio> aspectRatios, double tolerance) {
+        int count = 0;
+        for (AspectRatio aspectRatio : aspectRatios) {
+            count += aspectRatio.getSizeCount();
+        }
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        int i = 0;
+        for (AspectRatio aspectRatio : aspectRatios) {
+            System.arraycopy(aspectRatio.widths, 0, widths, i, aspectRatio.widths.length);
+            System.arraycopy(aspectRatio.heights, 0, heights, i, aspectRatio.heights.length);
+            i += aspectRatio.widths.length;
+        }
+        return fromSizes(widths, heights, tolerance);
     }
 
     public double getRatio() {
-        return ratio;
+        return (double) numerator / denominator;
+    }
+
+    public int getNumerator() {
+        return numerator;
     }
 
+    public int getDenominator() {
+        return denominator;
+    }
+
+    /**
+     * Width of the largest size of exactly this ratio, or of the largest size if there is none.
+     */
     public int getWidth() {
-        return width;
+        return widths[largestIndex];
     }
 
+    /**
+     * Height of the largest size of exactly this ratio, or of the largest size if there is none.
+     */
     public int getHeight() {
-        return height;
+        return heights[largestIndex];
+    }
+
+    public int getSizeCount() {
+        return widths.length;
+    }
+
+    public int getWidth(int index) {
+        return widths[index];
+    }
+
+    public int getHeight(int index) {
+        return heights[index];
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-    public Size getSize() {
-        return new Size(width, height);
+    /**
+     * Whether the size has exactly this ratio, not just one within the tolerance.
+     */
+    public boolean isExact(int index) {
+        return RatioTable.compare(widths[index], heights[index], numerator, denominator) == 0;
     }
 
-    public Camera.Size getSize(Camera camera) {
-        return camera.new Size(width, height);
+    @Override
+    public String toString() {
+        return numerator + ":" + denominator;
     }
 }
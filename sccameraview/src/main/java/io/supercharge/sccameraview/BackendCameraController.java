@@ -0,0 +1,201 @@
+package io.supercharge.sccameraview;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the camera of the views against a {@link CameraBackend}. The {@link CameraStateMachine}
+ * drives the lifecycle of the backend on its camera thread, pictures and recordings are only
+ * started while the camera is streaming, and the latencies of every stage are reported to the
+ * {@link CameraMetricsListener}. The backend tells the outcome of each operation through the
+ * controller, which is its {@link CameraBackend.Callback}.
+ */
+final class BackendCameraController implements CameraStateMachine.Operations, CameraBackend.Callback {
+
+    interface PictureListener {
+        /**
+         * Called on the camera thread. The release callback, if any, is run once the JPEG is not
+         * needed anymore.
+         */
+        void onPictureTaken(ByteBuffer jpeg, Runnable releaseCallback);
+    }
+
+    private final CameraBackend backend;
+    private final Executor executor;
+    private final CameraStateMachine stateMachine;
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong pictureCount = new AtomicLong();
+
+    private volatile CameraMetricsListener metricsListener;
+    private volatile PictureListener pictureListener;
+    private volatile long openStartTime;
+    private volatile long configureStartTime;
+    private volatile long shutterTime;
+    private volatile long recordStartTime;
+    private volatile boolean firstPreviewFrameExpected;
+    private volatile boolean recording;
+
+    BackendCameraController(CameraBackend backend) {
+        this.backend = backend;
+        executor = backend.getExecutor();
+        stateMachine = new CameraStateMachine(executor, this);
+    }
+
+    CameraStateMachine getStateMachine() {
+        return stateMachine;
+    }
+
+    void setMetricsListener(CameraMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    void setPictureListener(PictureListener pictureListener) {
+        this.pictureListener = pictureListener;
+    }
+
+    long getFrameCount() {
+        return frameCount.get();
+    }
+
+    long getPictureCount() {
+        return pictureCount.get();
+    }
+
+    /**
+     * When the last picture was asked for.
+     */
+    long getShutterTime() {
+        return shutterTime;
+    }
+
+    boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Ignored unless the camera is streaming once the camera thread gets to it.
+     */
+    void takePicture() {
+        shutterTime = System.nanoTime();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (stateMachine.getState() == CameraState.STREAMING) {
+                    backend.takePicture();
+                }
+            }
+        });
+    }
+
+    /**
+     * Ignored unless the camera is streaming once the camera thread gets to it.
+     */
+    void startRecording() {
+        recordStartTime = System.nanoTime();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (stateMachine.getState() == CameraState.STREAMING) {
+                    backend.startRecording();
+                }
+            }
+        });
+    }
+
+    void stopRecording() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                backend.stopRecording();
+            }
+        });
+    }
+
+    @Override
+    public void open() {
+        openStartTime = System.nanoTime();
+        backend.open(this);
+    }
+
+    @Override
+    public void configure() {
+        configureStartTime = System.nanoTime();
+        backend.configure();
+    }
+
+    @Override
+    public void close() {
+        backend.close();
+    }
+
+    @Override
+    public void onOpened() {
+        report(CameraStage.CAMERA_OPENED, openStartTime);
+        stateMachine.onOpened();
+    }
+
+    @Override
+    public void onConfigured() {
+        firstPreviewFrameExpected = true;
+        report(CameraStage.SESSION_CONFIGURED, configureStartTime);
+        stateMachine.onConfigured();
+    }
+
+    @Override
+    public void onClosed() {
+        recording = false;
+        stateMachine.onClosed();
+    }
+
+    @Override
+    public void onError() {
+        stateMachine.onError();
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, int width, int height, long timestampNanos) {
+        frameCount.incrementAndGet();
+        if (firstPreviewFrameExpected) {
+            firstPreviewFrameExpected = false;
+            report(CameraStage.FIRST_PREVIEW_FRAME, configureStartTime);
+        }
+    }
+
+    @Override
+    public void onCaptureCompleted() {
+        report(CameraStage.CAPTURE_COMPLETED, shutterTime);
+    }
+
+    @Override
+    public void onPictureTaken(ByteBuffer jpeg, Runnable releaseCallback) {
+        pictureCount.incrementAndGet();
+        report(CameraStage.IMAGE_AVAILABLE, shutterTime);
+        PictureListener listener = pictureListener;
+        if (listener != null) {
+            listener.onPictureTaken(jpeg, releaseCallback);
+        } else if (releaseCallback != null) {
+            releaseCallback.run();
+        }
+    }
+
+    @Override
+    public void onRecordingStarted() {
+        recording = true;
+        report(CameraStage.RECORDING_STARTED, recordStartTime);
+    }
+
+    @Override
+    public void onRecordingStopped() {
+        recording = false;
+    }
+
+    private void report(CameraStage stage, long startTime) {
+        CameraMetricsListener listener = metricsListener;
+        if (listener == null || startTime == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        listener.onCameraEvent(new CameraEvent(stage, now, now - startTime));
+    }
+}
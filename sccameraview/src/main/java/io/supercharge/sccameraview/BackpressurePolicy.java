@@ -0,0 +1,20 @@
+package io.supercharge.sccameraview;
+
+/**
+ * Decides what a burst does with a new frame when every writer is busy and the queue is full.
+ */
+public enum BackpressurePolicy {
+    /**
+     * The new frame is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest queued frame is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The camera holds new frames back until a frame is written, which slows down the burst. The
+     * camera thread itself is never blocked.
+     */
+    BLOCK
+}
@@ -5,42 +5,178 @@ import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.camera2.CaptureRequest;
 import android.media.CamcorderProfile;
+import android.media.MediaRecorder;
+import android.os.AsyncTask;
 import android.os.Build;
-import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.Surface;
 import android.view.TextureView;
+import android.view.WindowManager;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public abstract class BaseCameraView extends TextureView {
 
-    static final int MEDIA_TYPE_IMAGE = 1;
-    static final int MEDIA_TYPE_VIDEO = 2;
-    static final int ORIENTATION_90 = 90;
+    static final int MEDIA_TYPE_IMAGE = OutputTarget.MEDIA_TYPE_IMAGE;
+    static final int MEDIA_TYPE_VIDEO = OutputTarget.MEDIA_TYPE_VIDEO;
     static final int ORIENTATION_270 = 270;
     static final int SENSOR_ORIENTATION_DEFAULT_DEGREES = 90;
-    static final int BITRATE = 2500000;
-    public static double ASPECT_RATIO = 1.0;
+    static final int DEFAULT_BURST_QUEUE_DEPTH = 4;
+    static final int DEFAULT_BURST_WRITER_COUNT = 2;
+    static final int MAX_POOLED_BUFFERS = DEFAULT_BURST_QUEUE_DEPTH + DEFAULT_BURST_WRITER_COUNT;
+    public static volatile double ASPECT_RATIO = 1.0;
     static final String LOG_TAG = "SCCameraView";
+    static final float FOCUS_AREA_SIZE = 0.1f;
 
     protected int selectedRatioIdx;
     int cameraId;
-    boolean recordingVideo;
+    volatile boolean recordingVideo;
     File videoFile;
     boolean frontFacingCameraActive;
     OnImageSavedListener imageSavedListener;
-    List<AspectRatio> ratioSizeList;
+    MediaWriter mediaWriter;
+    volatile OutputTarget outputTarget = OutputTarget.publicDirectories();
+    volatile VideoEncoderConfig videoEncoderConfig = VideoEncoderConfig.adaptive();
+    volatile List<DerivedOutput> derivedOutputs = Collections.emptyList();
+    OnBurstCompletedListener burstCompletedListener;
+    OnCameraSwitchListener cameraSwitchListener;
+    OnCameraStateChangedListener cameraStateChangedListener;
+    volatile CameraMetricsListener cameraMetricsListener;
+    // set on the camera thread and in the background, read on the main thread. The list is never
+    // modified, it is replaced along with the selected index under the lock.
+    volatile List<AspectRatio> ratioSizeList;
+    final Object ratioLock = new Object();
+    BackpressurePolicy burstBackpressurePolicy = BackpressurePolicy.DROP_NEWEST;
+    int burstQueueDepth = DEFAULT_BURST_QUEUE_DEPTH;
+    int burstWriterCount = DEFAULT_BURST_WRITER_COUNT;
+    volatile BurstPipeline burstPipeline;
+    final ByteBufferPool bufferPool = new ByteBufferPool(MAX_POOLED_BUFFERS);
+    final Handler mainHandler = new Handler(Looper.getMainLooper());
+    final CameraThread cameraThread = new CameraThread("CameraBackground");
+    final FrameAnalysisDispatcher frameAnalysisDispatcher = new FrameAnalysisDispatcher();
+    final BackendCameraController cameraController;
+    volatile CameraBackend.Callback cameraCallback;
+    final CameraStateMachine stateMachine;
+    boolean prewarmEnabled;
+    volatile CameraCapabilities prewarmedCapabilities;
+    volatile int prewarmedRatioIdx;
+    volatile long switchStartTime;
+    volatile float zoom = 1f;
+    volatile int sensorOrientation = SENSOR_ORIENTATION_DEFAULT_DEGREES;
+    volatile int captureRotation;
+    volatile boolean exifRotationEnabled;
+    final DeviceOrientationListener orientationListener;
+    boolean gesturesEnabled = true;
+    volatile boolean quitWhenClosed;
+    private final ScaleGestureDetector scaleGestureDetector;
+    private final GestureDetector tapGestureDetector;
 
     final SurfaceTextureListener surfaceTextureListener = new SurfaceTextureListener();
 
     BaseCameraView(Context context) {
         super(context);
         frontFacingCameraActive = true;
-        ratioSizeList = new ArrayList<>();
+        ratioSizeList = Collections.emptyList();
+        mediaWriter = new DefaultMediaWriter();
+        cameraController = new BackendCameraController(new CameraBackend() {
+            @Override
+            public Executor getExecutor() {
+                return new Executor() {
+                    @Override
+                    public void execute(Runnable task) {
+                        cameraThread.post(task);
+                    }
+                };
+            }
+
+            @Override
+            public void open(Callback callback) {
+                cameraCallback = callback;
+                openCamera();
+            }
+
+            @Override
+            public void configure() {
+                configureCamera();
+            }
+
+            @Override
+            public void takePicture() {
+                captureStill();
+            }
+
+            @Override
+            public void startRecording() {
+                startVideoRecording();
+            }
+
+            @Override
+            public void stopRecording() {
+                stopVideoRecording();
+            }
+
+            @Override
+            public void close() {
+                closeCamera();
+            }
+        });
+        cameraController.setPictureListener(new BackendCameraController.PictureListener() {
+            @Override
+            public void onPictureTaken(ByteBuffer jpeg, Runnable releaseCallback) {
+                saveImage(jpeg, releaseCallback);
+            }
+        });
+        stateMachine = cameraController.getStateMachine();
+        stateMachine.setListener(new CameraStateMachine.Listener() {
+            @Override
+            public void onStateChanged(final CameraState state) {
+                if (state == CameraState.CLOSED && quitWhenClosed) {
+                    // the close of a detached view is done, nothing posts to the thread anymore
+                    cameraThread.quit();
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cameraStateChangedListener != null) {
+                            cameraStateChangedListener.onCameraStateChanged(state);
+                        }
+                    }
+                });
+            }
+        });
+        scaleGestureDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                setZoom(zoom * detector.getScaleFactor());
+                return true;
+            }
+        });
+        tapGestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onSingleTapUp(MotionEvent event) {
+                focusAt(event.getX(), event.getY());
+                return true;
+            }
+        });
+        orientationListener = new DeviceOrientationListener(context, new DeviceOrientationListener.Callback() {
+            @Override
+            public void onDeviceOrientationChanged(int orientation) {
+                BaseCameraView.this.onDeviceOrientationChanged();
+            }
+        });
     }
 
     public static BaseCameraView createCameraView(Context context) {
@@ -63,42 +199,348 @@ public abstract class BaseCameraView extends TextureView {
 
     public abstract void stopPreview();
 
-    public abstract void startRecordingVideo();
+    public void startRecordingVideo() {
+        cameraController.startRecording();
+    }
 
-    public abstract void stopRecordingVideo();
+    public void stopRecordingVideo() {
+        cameraController.stopRecording();
+    }
 
+    /**
+     * Opens the camera on the camera thread and reports the outcome to {@link #cameraCallback}.
+     */
     abstract void openCamera();
 
-    public abstract void switchCamera();
+    /**
+     * Starts the preview streams of the open camera with the selected sizes on the camera thread,
+     * and reports the outcome to {@link #cameraCallback}. Also called to reconfigure a running
+     * preview.
+     */
+    abstract void configureCamera();
+
+    /**
+     * Releases the camera on the camera thread and reports it to {@link #cameraCallback}.
+     */
+    abstract void closeCamera();
+
+    /**
+     * Takes a picture on the camera thread and hands its JPEG to {@link #cameraCallback}.
+     */
+    abstract void captureStill();
+
+    /**
+     * Starts recording on the camera thread and reports it to {@link #cameraCallback}.
+     */
+    abstract void startVideoRecording();
 
-    public abstract void takePicture();
+    /**
+     * Stops the recording on the camera thread and reports it to {@link #cameraCallback}.
+     */
+    abstract void stopVideoRecording();
+
+    /**
+     * Called when the first analyzer is added or the last one is removed.
+     */
+    abstract void onFrameAnalysisChanged();
+
+    /**
+     * Takes a picture. While recording a video snapshot is taken instead, which keeps the recording
+     * running, on Camera1 only if the camera supports video snapshots.
+     */
+    public void takePicture() {
+        cameraController.takePicture();
+    }
+
+    /**
+     * Takes {@code count} pictures, one every {@code intervalMillis} or as fast as the camera
+     * allows when the interval is zero. The frames are written by the burst pipeline, configured
+     * with {@link #setBurstQueueDepth(int)}, {@link #setBurstWriterCount(int)} and
+     * {@link #setBurstBackpressurePolicy(BackpressurePolicy)}.
+     */
+    public abstract void takeBurst(int count, long intervalMillis);
 
     public abstract void changeAspectRatio(int position);
 
+    /**
+     * Applies the zoom ratio to the open camera. The camera is updated at most once per frame,
+     * intermediate values of a pinch are merged.
+     */
+    abstract void applyZoom(float zoom);
+
+    /**
+     * Focuses and meters on the point of the view, given in view pixels.
+     */
+    public abstract void focusAt(float x, float y);
+
     public abstract void collectRatioSizes();
 
     public boolean isRecordingVideo() {
         return recordingVideo;
     }
 
+    /**
+     * Every recording is written to this file instead of a new destination of the output target.
+     */
     public void setVideoFile(File videoFile) {
         this.videoFile = videoFile;
     }
 
+    public VideoEncoderConfig getVideoEncoderConfig() {
+        return videoEncoderConfig;
+    }
+
+    /**
+     * How recordings are encoded, {@link VideoEncoderConfig#adaptive()} by default. Applies to
+     * recorders prepared afterwards.
+     */
+    public void setVideoEncoderConfig(VideoEncoderConfig videoEncoderConfig) {
+        this.videoEncoderConfig = videoEncoderConfig;
+    }
+
+    public OutputTarget getOutputTarget() {
+        return outputTarget;
+    }
+
+    /**
+     * Where pictures and videos are written, the public Pictures and Movies directories by default.
+     */
+    public void setOutputTarget(OutputTarget outputTarget) {
+        OutputTarget previousTarget = this.outputTarget;
+        this.outputTarget = outputTarget;
+        previousTarget.releasePreparedDestinations();
+    }
+
+    /**
+     * Pass an {@link OnImageResultListener} to also get the written file and the write time.
+     */
     public void setImageSavedListener(OnImageSavedListener imageSavedListener) {
         this.imageSavedListener = imageSavedListener;
     }
 
+    public void setCameraSwitchListener(OnCameraSwitchListener cameraSwitchListener) {
+        this.cameraSwitchListener = cameraSwitchListener;
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Sets the zoom ratio, 1 shows the full field of view. The ratio is clamped to
+     * {@link #getMaxZoom()}.
+     */
+    public void setZoom(float zoom) {
+        float clampedZoom = Math.max(1f, Math.min(zoom, getMaxZoom()));
+        if (clampedZoom == this.zoom) {
+            return;
+        }
+        this.zoom = clampedZoom;
+        applyZoom(clampedZoom);
+    }
+
+    public float getMaxZoom() {
+        CameraCapabilities capabilities = CameraCapabilityCache.getInstance().get(frontFacingCameraActive);
+        return capabilities != null ? capabilities.maxZoom : 1f;
+    }
+
+    public boolean isGesturesEnabled() {
+        return gesturesEnabled;
+    }
+
+    /**
+     * Enables pinch to zoom and tap to focus on the view. Enabled by default.
+     */
+    public void setGesturesEnabled(boolean gesturesEnabled) {
+        this.gesturesEnabled = gesturesEnabled;
+    }
+
+    public boolean isExifRotationEnabled() {
+        return exifRotationEnabled;
+    }
+
+    /**
+     * Never asks the camera to rotate the pictures, only writes the rotation into the EXIF
+     * orientation tag. Cheapest for devices that rotate JPEGs by decoding and encoding them again.
+     * When disabled the camera is asked to rotate, and the tag is only written for pictures it
+     * left unrotated.
+     */
+    public void setExifRotationEnabled(boolean exifRotationEnabled) {
+        this.exifRotationEnabled = exifRotationEnabled;
+        onDeviceOrientationChanged();
+    }
+
+    /**
+     * Reports the timing of the camera open, session, first frame and picture stages.
+     */
+    public void setCameraMetricsListener(CameraMetricsListener cameraMetricsListener) {
+        this.cameraMetricsListener = cameraMetricsListener;
+        cameraController.setMetricsListener(cameraMetricsListener);
+    }
+
+    public static double getAspectRatioTolerance() {
+        return CameraCapabilityCache.getInstance().getRatioTolerance();
+    }
+
+    /**
+     * Sizes whose ratios differ by at most this relative tolerance share an aspect ratio, e.g.
+     * 0.015 for 1.5%, the default. Zero only groups exactly equal ratios. Applies to the aspect
+     * ratios loaded afterwards, so it is best set before the views are created.
+     */
+    public static void setAspectRatioTolerance(double tolerance) {
+        CameraCapabilityCache.getInstance().setRatioTolerance(Math.max(0, tolerance));
+    }
+
+    public CameraState getCameraState() {
+        return stateMachine.getState();
+    }
+
+    /**
+     * The listener is called on the main thread, after the camera thread moved on already.
+     */
+    public void setCameraStateChangedListener(OnCameraStateChangedListener cameraStateChangedListener) {
+        this.cameraStateChangedListener = cameraStateChangedListener;
+    }
+
+    /**
+     * Closes the current camera and opens the opposite one. Both happen on the camera thread, the
+     * call returns right away.
+     */
+    public void switchCamera() {
+        switchStartTime = System.nanoTime();
+        if (applyPrewarmedCamera()) {
+            // the aspect ratios of the pre-warmed camera are known already
+            stateMachine.requestReopen();
+            return;
+        }
+
+        cancelBurst();
+        frontFacingCameraActive = !frontFacingCameraActive;
+        setRatioSizes(Collections.<AspectRatio>emptyList());
+        stateMachine.requestReopen();
+        loadAspectRatios();
+    }
+
+    public boolean isPrewarmEnabled() {
+        return prewarmEnabled;
+    }
+
+    /**
+     * Resolves the opposite camera and its sizes while the current one is open, so
+     * {@link #switchCamera()} can close and open the cameras in one go without reloading the
+     * aspect ratios.
+     */
+    public void setPrewarmEnabled(boolean prewarmEnabled) {
+        this.prewarmEnabled = prewarmEnabled;
+        if (!prewarmEnabled) {
+            prewarmedCapabilities = null;
+        }
+    }
+
+    /**
+     * Registers an analyzer for the preview frames. Analyzers run on their own threads and always
+     * get the latest frame, frames arriving while an analyzer is busy are dropped for it.
+     */
+    public void addFrameAnalyzer(FrameAnalyzer analyzer) {
+        boolean analyzing = frameAnalysisDispatcher.hasAnalyzers();
+        frameAnalysisDispatcher.addAnalyzer(analyzer);
+        if (!analyzing) {
+            onFrameAnalysisChanged();
+        }
+    }
+
+    public void removeFrameAnalyzer(FrameAnalyzer analyzer) {
+        frameAnalysisDispatcher.removeAnalyzer(analyzer);
+        if (!frameAnalysisDispatcher.hasAnalyzers()) {
+            onFrameAnalysisChanged();
+        }
+    }
+
+    public AnalyzerStats getFrameAnalyzerStats(FrameAnalyzer analyzer) {
+        return frameAnalysisDispatcher.getStats(analyzer);
+    }
+
+    public CameraThread getCameraThread() {
+        return cameraThread;
+    }
+
+    public MediaWriter getMediaWriter() {
+        return mediaWriter;
+    }
+
+    public void setMediaWriter(MediaWriter mediaWriter) {
+        this.mediaWriter = mediaWriter;
+    }
+
+    public List<DerivedOutput> getDerivedOutputs() {
+        return derivedOutputs;
+    }
+
+    /**
+     * Smaller variants generated from every picture while it is still in memory, e.g. a thumbnail
+     * and a copy to upload. They arrive with the {@link ImageSaveResult} of the picture.
+     */
+    public void setDerivedOutputs(DerivedOutput... derivedOutputs) {
+        this.derivedOutputs = Collections.unmodifiableList(Arrays.asList(derivedOutputs.clone()));
+    }
+
+    public void setBurstCompletedListener(OnBurstCompletedListener burstCompletedListener) {
+        this.burstCompletedListener = burstCompletedListener;
+    }
+
+    public void setBurstBackpressurePolicy(BackpressurePolicy burstBackpressurePolicy) {
+        this.burstBackpressurePolicy = burstBackpressurePolicy;
+    }
+
+    public void setBurstQueueDepth(int burstQueueDepth) {
+        this.burstQueueDepth = burstQueueDepth;
+    }
+
+    /**
+     * Number of burst frames written at the same time, also the thread count of the default media
+     * writer. A custom media writer decides on how many threads.
+     */
+    public void setBurstWriterCount(int burstWriterCount) {
+        this.burstWriterCount = burstWriterCount;
+        if (mediaWriter instanceof DefaultMediaWriter) {
+            ((DefaultMediaWriter) mediaWriter).setThreadCount(Math.max(1, burstWriterCount));
+        }
+    }
+
+    /**
+     * Number of image sized buffers allocated on the capture path since the view was created.
+     */
+    public long getBufferAllocationCount() {
+        return bufferPool.getAllocationCount();
+    }
+
     public List<AspectRatio> getRatioSizeList() {
         return ratioSizeList;
     }
 
     public int getSelectedRatioIdx() {
-        return selectedRatioIdx;
+        synchronized (ratioLock) {
+            return selectedRatioIdx;
+        }
     }
 
     public void setSelectedRatioIdx(int selectedRatioIdx) {
-        this.selectedRatioIdx = selectedRatioIdx;
+        synchronized (ratioLock) {
+            this.selectedRatioIdx = selectedRatioIdx;
+        }
+    }
+
+    /**
+     * Null while the aspect ratios are not known yet.
+     */
+    AspectRatio getSelectedRatio() {
+        synchronized (ratioLock) {
+            return ratioSizeList.isEmpty() ? null : ratioSizeList.get(selectedRatioIdx);
+        }
+    }
+
+    boolean hasRatioSizes() {
+        return !ratioSizeList.isEmpty();
     }
 
     public void recordVideo() {
@@ -119,72 +561,542 @@ public abstract class BaseCameraView extends TextureView {
         return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_LOW);
     }
 
-    File getOutputMediaFile(int type){
-        if (type == MEDIA_TYPE_IMAGE) {
-            File mediaStorageDir = new File(Environment.getExternalStoragePublicDirectory(
-                    Environment.DIRECTORY_PICTURES).toString());
+    /**
+     * The index of the video size of the ratio: the largest one the device encoders record at the
+     * frame rate of the recorder profile. Without an encoder table, the largest one within the
+     * recorder profile.
+     */
+    int chooseVideoSize(AspectRatio videoRatio) {
+        CamcorderProfile profile = getCamcorderProfile();
+        int index = VideoEncoderSelector.chooseVideoSize(videoEncoderConfig, videoRatio, profile.videoFrameRate,
+                VideoEncoderCapabilityReader.getEncoders());
+        return index >= 0 ? index
+                : SizeSelector.chooseLargestSize(videoRatio, profile.videoFrameWidth, profile.videoFrameHeight);
+    }
+
+    /**
+     * The recorder profile with the size of the recording, and the codec, frame rate and bitrate
+     * chosen for it by the video encoder config. The frame rate is the one the encoder accepts, the
+     * camera still has to be set to a matching FPS range.
+     */
+    CamcorderProfile getRecorderProfile(int width, int height) {
+        CamcorderProfile profile = getCamcorderProfile();
+        VideoEncoderSettings settings = VideoEncoderSelector.select(videoEncoderConfig, width, height,
+                profile.videoFrameRate, VideoEncoderCapabilityReader.getEncoders());
+        profile.videoFrameWidth = width;
+        profile.videoFrameHeight = height;
+        profile.videoFrameRate = settings.frameRate;
+        profile.videoBitRate = settings.bitrate;
+        profile.videoCodec = VideoEncoderConfig.CODEC_HEVC.equals(settings.mimeType)
+                ? MediaRecorder.VideoEncoder.HEVC : MediaRecorder.VideoEncoder.H264;
+        return profile;
+    }
 
-            if (createDirectoryForFile(mediaStorageDir)) {
-                return new File(mediaStorageDir.getPath() + File.separator +
-                        "IMG_"+ getTimeStamp() + ".jpg");
+    /**
+     * The FPS range to record at the frame rate, as {min, max}: the range with that maximum and the
+     * highest minimum, otherwise the fastest range below it, otherwise the slowest one. Null
+     * without ranges.
+     */
+    static int[] chooseRecordingFpsRange(int[][] ranges, int frameRate) {
+        int[] best = null;
+        for (int[] range : ranges) {
+            if (best == null || isBetterRecordingFpsRange(range, best, frameRate)) {
+                best = range;
             }
-        } else if(type == MEDIA_TYPE_VIDEO) {
-            File mediaStorageDir = new File(Environment.getExternalStoragePublicDirectory(
-                    Environment.DIRECTORY_MOVIES).toString());
+        }
+        return best;
+    }
+
+    private static boolean isBetterRecordingFpsRange(int[] range, int[] best, int frameRate) {
+        boolean fits = range[1] <= frameRate;
+        boolean bestFits = best[1] <= frameRate;
+        if (fits != bestFits) {
+            return fits;
+        }
+        if (range[1] != best[1]) {
+            // the fastest range not above the frame rate, or the slowest above it
+            return fits ? range[1] > best[1] : range[1] < best[1];
+        }
+        // a fixed range keeps the camera from dropping the frame rate in low light
+        return range[0] > best[0];
+    }
 
-            if (createDirectoryForFile(mediaStorageDir)) {
-                return new File(mediaStorageDir.getPath() + File.separator +
-                        "VID_"+ getTimeStamp() + ".mp4");
+    /**
+     * The destination of the next recording, opened so a recorder can be pointed at it. Null if
+     * it cannot be opened or has no descriptor.
+     */
+    @SuppressWarnings("checkstyle:illegalcatch")
+    MediaDestination openVideoDestination() {
+        MediaDestination destination = videoFile != null ? MediaDestination.of(videoFile)
+                : outputTarget.createDestination(MEDIA_TYPE_VIDEO, "");
+        try {
+            if (destination.getFileDescriptor() != null) {
+                return destination;
             }
+            Log.e(LOG_TAG, "Videos cannot be written to " + destination);
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Cannot open " + destination + ": " + e.getMessage());
         }
+        destination.abort();
         return null;
     }
 
-    boolean createDirectoryForFile(File mediaStorageDir) {
-        if (!mediaStorageDir.exists()){
-            if (!mediaStorageDir.mkdirs()){
-                Log.e(LOG_TAG, "failed to create directory");
-                return false;
+    /**
+     * Points the recorder at the destination, by its path when it is a file.
+     */
+    static void setRecorderOutput(MediaRecorder mediaRecorder, MediaDestination destination) throws IOException {
+        if (destination.getFile() != null) {
+            mediaRecorder.setOutputFile(destination.getFile().getPath());
+        } else {
+            mediaRecorder.setOutputFile(destination.getFileDescriptor());
+        }
+    }
+
+    /**
+     * Commits the destination of a stopped recording.
+     */
+    static void commitVideoDestination(MediaDestination destination) {
+        try {
+            destination.commit();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Cannot save the video: " + e.getMessage());
+            destination.abort();
+        }
+    }
+
+    /**
+     * Opens the destination of the next picture in the background, so its write does not wait
+     * for the file or the MediaStore entry to be created.
+     */
+    void prepareImageDestination() {
+        outputTarget.prepareImageDestination(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    void saveImage(ByteBuffer imageData, Runnable releaseCallback) {
+        ByteBuffer orientedData = orientImage(imageData);
+        if (orientedData != imageData && releaseCallback != null) {
+            // the tag was inserted into a copy, the camera buffer is not needed anymore
+            releaseCallback.run();
+            releaseCallback = null;
+        }
+        mediaWriter.write(new MediaWriteRequest(orientedData, outputTarget.takeImageDestination(), true,
+                getMeasuredImageSavedListener(), releaseCallback, derivedOutputs, outputTarget));
+        prepareImageDestination();
+    }
+
+    /**
+     * The JPEG with the EXIF orientation of the capture, written when the camera was not asked to
+     * rotate or ignored the request. The pixels are never decoded.
+     */
+    ByteBuffer orientImage(ByteBuffer jpeg) {
+        return orientImage(jpeg, captureRotation, exifRotationEnabled);
+    }
+
+    static ByteBuffer orientImage(ByteBuffer jpeg, int rotation, boolean exifRotationEnabled) {
+        int orientation = ExifOrientation.fromDegrees(rotation);
+        int currentOrientation = ExifOrientation.read(jpeg);
+        if (exifRotationEnabled) {
+            boolean upToDate = currentOrientation == orientation
+                    || currentOrientation == ExifOrientation.UNDEFINED && orientation == ExifOrientation.NORMAL;
+            return upToDate ? jpeg : ExifOrientation.write(jpeg, orientation);
+        }
+        if (currentOrientation > ExifOrientation.NORMAL || rotation % 180 == 0) {
+            // rotated through the tag, or upside down which cannot be told from the dimensions
+            return jpeg;
+        }
+        int[] dimensions = ExifOrientation.readDimensions(jpeg);
+        if (dimensions != null && dimensions[0] > dimensions[1]) {
+            // still landscape like the sensor, the camera ignored the rotation
+            return ExifOrientation.write(jpeg, orientation);
+        }
+        return jpeg;
+    }
+
+    /**
+     * Clockwise rotation of a picture taken now, for the sensor orientation and the way the device
+     * is held.
+     */
+    int getJpegRotation() {
+        return getJpegRotation(sensorOrientation, orientationListener.getOrientation(), frontFacingCameraActive);
+    }
+
+    /**
+     * The rotation the camera is asked to apply, zero when it is only written to the EXIF tag.
+     */
+    int getJpegRotationHint() {
+        return exifRotationEnabled ? 0 : getJpegRotation();
+    }
 
+    static int getJpegRotation(int sensorOrientation, int deviceOrientation, boolean frontFacing) {
+        // the front camera is mirrored, so the device rotation counts the other way
+        if (frontFacing) {
+            return (sensorOrientation - deviceOrientation + 360) % 360;
+        }
+        return (sensorOrientation + deviceOrientation) % 360;
+    }
+
+    /**
+     * Clockwise rotation of the display from its natural orientation.
+     */
+    int getDisplayRotation() {
+        WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        switch (windowManager.getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_90:
+                return 90;
+            case Surface.ROTATION_180:
+                return 180;
+            case Surface.ROTATION_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Clockwise rotation of the preview so it is upright on the display.
+     */
+    static int getDisplayOrientation(int sensorOrientation, int displayRotation, boolean frontFacing) {
+        if (frontFacing) {
+            // the preview of the front camera is mirrored before it is rotated
+            return (360 - (sensorOrientation + displayRotation) % 360) % 360;
+        }
+        return (sensorOrientation - displayRotation + 360) % 360;
+    }
+
+    /**
+     * Called when the device is turned or the rotation mode changes.
+     */
+    void onDeviceOrientationChanged() {
+    }
+
+    /**
+     * The image saved listener, wrapped to report the written file while metrics are collected.
+     */
+    private OnImageSavedListener getMeasuredImageSavedListener() {
+        final OnImageSavedListener listener = imageSavedListener;
+        final long startTime = cameraController.getShutterTime();
+        if (cameraMetricsListener == null) {
+            return listener;
+        }
+        return new OnImageResultListener() {
+            @Override
+            public void onImageSaved() {
+                if (listener != null) {
+                    listener.onImageSaved();
+                }
             }
+
+            @Override
+            public void onImageSaved(ImageSaveResult result) {
+                reportCameraEvent(CameraStage.FILE_WRITTEN, startTime);
+                if (listener instanceof OnImageResultListener) {
+                    ((OnImageResultListener) listener).onImageSaved(result);
+                }
+            }
+        };
+    }
+
+    void reportCameraEvent(CameraStage stage, long startTime) {
+        CameraMetricsListener listener = cameraMetricsListener;
+        if (listener == null || startTime == 0) {
+            return;
         }
-        return true;
+        long now = System.nanoTime();
+        listener.onCameraEvent(new CameraEvent(stage, now, now - startTime));
+    }
+
+    void onSessionConfigured() {
+        prepareImageDestination();
+        cameraCallback.onConfigured();
+    }
+
+    BurstPipeline startBurstPipeline(int count) {
+        cancelBurst();
+        final OnBurstCompletedListener listener = burstCompletedListener;
+        OnBurstCompletedListener completedListener = new OnBurstCompletedListener() {
+            @Override
+            public void onBurstCompleted(int savedFrames, int droppedFrames) {
+                onBurstFinished();
+                if (listener != null) {
+                    listener.onBurstCompleted(savedFrames, droppedFrames);
+                }
+            }
+        };
+        burstPipeline = new BurstPipeline(count, burstQueueDepth, burstWriterCount, burstBackpressurePolicy,
+                mediaWriter, outputTarget, derivedOutputs, completedListener, getBurstFrameListener(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        onBurstReady();
+                    }
+                });
+        return burstPipeline;
+    }
+
+    void offerBurstFrame(ByteBuffer data, int format, int width, int height, Runnable releaseCallback) {
+        BurstPipeline pipeline = burstPipeline;
+        if (pipeline == null || !pipeline.isAccepting()) {
+            if (releaseCallback != null) {
+                releaseCallback.run();
+            }
+            return;
+        }
+        reportCameraEvent(CameraStage.IMAGE_AVAILABLE, pipeline.getStartTime());
+        pipeline.offer(new BurstPipeline.Frame(data, format, width, height, captureRotation, exifRotationEnabled,
+                releaseCallback));
+    }
+
+    boolean isBurstActive() {
+        BurstPipeline pipeline = burstPipeline;
+        return pipeline != null && pipeline.isAccepting();
+    }
+
+    /**
+     * False while a blocking burst is full, the camera keeps its frames until
+     * {@link #onBurstReady()}.
+     */
+    boolean isBurstReady() {
+        BurstPipeline pipeline = burstPipeline;
+        return pipeline != null && pipeline.isReady();
+    }
+
+    /**
+     * Called on a background thread when a blocked burst can take a frame again.
+     */
+    void onBurstReady() {
+    }
+
+    /**
+     * Called on the main thread once a burst is completed or cancelled.
+     */
+    void onBurstFinished() {
+    }
+
+    /**
+     * Reports the written burst frames while metrics are collected.
+     */
+    private OnImageSavedListener getBurstFrameListener() {
+        if (cameraMetricsListener == null) {
+            return null;
+        }
+        final long startTime = System.nanoTime();
+        return new OnImageResultListener() {
+            @Override
+            public void onImageSaved() {
+            }
+
+            @Override
+            public void onImageSaved(ImageSaveResult result) {
+                reportCameraEvent(CameraStage.FILE_WRITTEN, startTime);
+            }
+        };
     }
 
-    String getTimeStamp() {
-        return new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+    void cancelBurst() {
+        if (burstPipeline != null) {
+            burstPipeline.cancel();
+            burstPipeline = null;
+        }
     }
 
+    void setRatioSizes(List<AspectRatio> aspectRatios) {
+        synchronized (ratioLock) {
+            ratioSizeList = Collections.unmodifiableList(new ArrayList<>(aspectRatios));
+            if (selectedRatioIdx >= ratioSizeList.size()) {
+                selectedRatioIdx = 0;
+            }
+        }
+    }
 
-    void saveImage(byte[] imageData) {
-        //TODO: refactor filePath method
-        SaveImageTask saveImageTask = new SaveImageTask(imageSavedListener, imageData, getOutputMediaFile(MEDIA_TYPE_IMAGE));
-        saveImageTask.execute();
+    /**
+     * Sets the aspect ratios and applies the selected one, unless they are known already.
+     */
+    void initRatioSizes(List<AspectRatio> aspectRatios) {
+        synchronized (ratioLock) {
+            if (ratioSizeList.isEmpty() && !aspectRatios.isEmpty()) {
+                setRatioSizes(aspectRatios);
+                ASPECT_RATIO = ratioSizeList.get(selectedRatioIdx).getRatio();
+            }
+        }
+    }
+
+    /**
+     * Applies the aspect ratio at the position, if there is one.
+     */
+    void applyAspectRatio(int position) {
+        List<AspectRatio> ratios = ratioSizeList;
+        if (position >= 0 && position < ratios.size()) {
+            ASPECT_RATIO = ratios.get(position).getRatio();
+        }
+    }
+
+    boolean collectCachedRatioSizes() {
+        CameraCapabilities capabilities = CameraCapabilityCache.getInstance().get(frontFacingCameraActive);
+        if (capabilities == null) {
+            return false;
+        }
+        setRatioSizes(capabilities.aspectRatios);
+        return true;
     }
 
     public void loadAspectRatios() {
+        if (collectCachedRatioSizes()) {
+            changeAspectRatio(getSelectedRatioIdx());
+            requestParentLayout();
+            return;
+        }
+
         LoadAspectRatiosTask loadAspectRatiosTask = new LoadAspectRatiosTask(getContext(), this);
         loadAspectRatiosTask.execute();
     }
 
     public void requestParentLayout() {
-        stopPreview();
-        getParent().requestLayout();
-        startPreview();
+        if (getParent() != null) {
+            getParent().requestLayout();
+        }
+        if (!recordingVideo) {
+            reconfigurePreview();
+        }
+    }
+
+    /**
+     * Applies the selected aspect ratio to the running preview without reopening the camera.
+     * Starts the preview if the camera is not open yet.
+     */
+    void reconfigurePreview() {
+        if (!hasRatioSizes()) {
+            return;
+        }
+        if (stateMachine.getState() == CameraState.CLOSED) {
+            startPreview();
+        } else {
+            stateMachine.requestReconfigure();
+        }
+    }
+
+    void prewarmOppositeCamera() {
+        if (!prewarmEnabled) {
+            return;
+        }
+        CameraCapabilities capabilities = CameraCapabilityCache.getInstance().get(!frontFacingCameraActive);
+        if (capabilities == null || capabilities.aspectRatios.isEmpty()) {
+            prewarmedCapabilities = null;
+            return;
+        }
+        prewarmedRatioIdx = SizeSelector.findClosestIndex(capabilities.aspectRatios, ASPECT_RATIO);
+        prewarmedCapabilities = capabilities;
+    }
+
+    /**
+     * Switches the view state over to the pre-warmed camera. Returns false when there is no
+     * pre-warmed camera and the regular switch has to be used.
+     */
+    boolean applyPrewarmedCamera() {
+        CameraCapabilities capabilities = prewarmedCapabilities;
+        if (capabilities == null || recordingVideo) {
+            return false;
+        }
+        prewarmedCapabilities = null;
+        cancelBurst();
+        frontFacingCameraActive = capabilities.frontFacing;
+        synchronized (ratioLock) {
+            setRatioSizes(capabilities.aspectRatios);
+            setSelectedRatioIdx(prewarmedRatioIdx);
+            changeAspectRatio(prewarmedRatioIdx);
+        }
+        if (getParent() != null) {
+            getParent().requestLayout();
+        }
+        return true;
+    }
+
+    void onCameraSwitched() {
+        long startTime = switchStartTime;
+        if (startTime == 0) {
+            return;
+        }
+        switchStartTime = 0;
+        final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        final boolean frontFacing = frontFacingCameraActive;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (cameraSwitchListener != null) {
+                    cameraSwitchListener.onCameraSwitched(frontFacing, latencyMillis);
+                }
+            }
+        });
     }
 
     public void setAspectRatioByScreenSize(double screenRatio) {
-        double minDifference = Double.MAX_VALUE;
-        int minIdx = 0;
-        for (int i = 0; i < ratioSizeList.size(); i++) {
-            double difference = Math.abs(ratioSizeList.get(i).getRatio() - screenRatio);
-            if (difference < minDifference) {
-                minDifference = difference;
-                minIdx = i;
+        synchronized (ratioLock) {
+            if (ratioSizeList.isEmpty()) {
+                return;
             }
+            int minIdx = SizeSelector.findClosestIndex(ratioSizeList, screenRatio);
+            ASPECT_RATIO = ratioSizeList.get(minIdx).getRatio();
+            setSelectedRatioIdx(minIdx);
+        }
+    }
+
+    /**
+     * Maps a point of the view, both coordinates between 0 and 1, to the same point of the sensor
+     * image. The preview is shown rotated by the sensor orientation and mirrored for the front camera.
+     */
+    static float[] mapViewPointToSensor(float x, float y, int sensorOrientation, boolean frontFacing) {
+        if (frontFacing) {
+            x = 1f - x;
+        }
+        switch (sensorOrientation) {
+            case 90:
+                return new float[]{y, 1f - x};
+            case 180:
+                return new float[]{1f - x, 1f - y};
+            case 270:
+                return new float[]{1f - y, x};
+            default:
+                return new float[]{x, y};
         }
-        ASPECT_RATIO = ratioSizeList.get(minIdx).getRatio();
-        setSelectedRatioIdx(minIdx);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!gesturesEnabled) {
+            return super.onTouchEvent(event);
+        }
+        scaleGestureDetector.onTouchEvent(event);
+        if (!scaleGestureDetector.isInProgress()) {
+            tapGestureDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        quitWhenClosed = false;
+        cameraThread.resume();
+        if (orientationListener.canDetectOrientation()) {
+            orientationListener.enable();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        orientationListener.disable();
+        outputTarget.releasePreparedDestinations();
+        // the thread quits once the camera is closed, the close still has to post its completion
+        quitWhenClosed = true;
+        stopPreview();
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                if (quitWhenClosed && stateMachine.getState() == CameraState.CLOSED) {
+                    cameraThread.quit();
+                }
+            }
+        });
     }
 
     private class SurfaceTextureListener implements TextureView.SurfaceTextureListener {
@@ -207,7 +1119,10 @@ public abstract class BaseCameraView extends TextureView {
 
         @Override
         public void onSurfaceTextureUpdated(SurfaceTexture surface) {
-            // nothing to do
+            CameraBackend.Callback callback = cameraCallback;
+            if (callback != null) {
+                callback.onPreviewFrame(null, 0, 0, surface.getTimestamp());
+            }
         }
     }
 }
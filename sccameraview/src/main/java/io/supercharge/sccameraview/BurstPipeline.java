@@ -0,0 +1,329 @@
+package io.supercharge.sccameraview;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Hands the frames of one burst to the {@link MediaWriter} as requests that are not user
+ * initiated, so pictures taken meanwhile are written first. At most {@code writeLimit} frames are
+ * written at a time and {@code queueDepth} more wait for a write to finish. Beyond that the
+ * {@link BackpressurePolicy} decides which frame is dropped, or holds the camera back, so at most
+ * {@code queueDepth + writeLimit} frames are held in memory at any time.
+ *
+ * Frames get the EXIF orientation of the capture like single pictures, encoded on
+ * {@code writeLimit} threads of the burst. Cancelling drops the waiting frames only, the frames
+ * being written are finished.
+ */
+class BurstPipeline {
+
+    private static final int JPEG_QUALITY = 90;
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    private final int frameCount;
+    private final int queueDepth;
+    private final int writeLimit;
+    private final BackpressurePolicy policy;
+    private final MediaWriter mediaWriter;
+    private final OutputTarget outputTarget;
+    private final List<DerivedOutput> derivedOutputs;
+    private final OnBurstCompletedListener listener;
+    private final OnImageSavedListener frameListener;
+    private final Runnable readyCallback;
+    private final ThreadPoolExecutor executor;
+    private final ArrayDeque<Frame> waitingFrames = new ArrayDeque<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final long startTime = System.nanoTime();
+    private int offeredFrames;
+    private int activeWrites;
+    private int savedFrames;
+    private int droppedFrames;
+    private boolean cancelled;
+    private boolean completed;
+
+    /**
+     * The frame listener is told the result of every frame, the ready callback is run whenever a
+     * blocked burst can take a frame again.
+     */
+    BurstPipeline(int frameCount, int queueDepth, int writeLimit, BackpressurePolicy policy, MediaWriter mediaWriter,
+                  OutputTarget outputTarget, List<DerivedOutput> derivedOutputs, OnBurstCompletedListener listener,
+                  OnImageSavedListener frameListener, Runnable readyCallback) {
+        this.frameCount = frameCount;
+        this.queueDepth = Math.max(0, queueDepth);
+        this.writeLimit = Math.max(1, writeLimit);
+        this.policy = policy;
+        this.mediaWriter = mediaWriter;
+        this.outputTarget = outputTarget;
+        this.derivedOutputs = derivedOutputs;
+        this.listener = listener;
+        this.frameListener = frameListener;
+        this.readyCallback = readyCallback;
+        // never more than writeLimit frames are handed to it at once
+        executor = new ThreadPoolExecutor(this.writeLimit, this.writeLimit, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(this.writeLimit));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    synchronized boolean isAccepting() {
+        return !cancelled && offeredFrames < frameCount;
+    }
+
+    /**
+     * Whether a frame offered now is kept. A blocking burst is not ready while it is full, the
+     * camera should hold the frame back until the ready callback runs.
+     */
+    synchronized boolean isReady() {
+        if (policy != BackpressurePolicy.BLOCK) {
+            return isAccepting();
+        }
+        return isAccepting() && (activeWrites < writeLimit || waitingFrames.size() < queueDepth);
+    }
+
+    /**
+     * A frame offered to a full blocking burst is dropped.
+     */
+    void offer(Frame frame) {
+        Frame droppedFrame = null;
+        boolean write = false;
+        boolean complete;
+        synchronized (this) {
+            if (!isAccepting()) {
+                droppedFrame = frame;
+            } else {
+                frame.index = offeredFrames++;
+                if (activeWrites < writeLimit) {
+                    activeWrites++;
+                    write = true;
+                } else if (waitingFrames.size() < queueDepth) {
+                    waitingFrames.add(frame);
+                } else if (policy == BackpressurePolicy.DROP_OLDEST && !waitingFrames.isEmpty()) {
+                    droppedFrame = waitingFrames.poll();
+                    waitingFrames.add(frame);
+                    droppedFrames++;
+                } else {
+                    droppedFrame = frame;
+                    droppedFrames++;
+                }
+            }
+            complete = checkCompleted();
+        }
+        if (droppedFrame != null) {
+            droppedFrame.release();
+        }
+        if (write) {
+            write(frame);
+        }
+        if (complete) {
+            notifyCompleted();
+        }
+    }
+
+    void cancel() {
+        List<Frame> dropped;
+        boolean complete;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            dropped = new ArrayList<>(waitingFrames);
+            waitingFrames.clear();
+            droppedFrames += dropped.size() + frameCount - offeredFrames;
+            complete = checkCompleted();
+        }
+        for (Frame frame : dropped) {
+            frame.release();
+        }
+        if (complete) {
+            notifyCompleted();
+        }
+    }
+
+    private void onFrameDone(boolean saved) {
+        Frame next;
+        boolean complete;
+        synchronized (this) {
+            activeWrites--;
+            if (saved) {
+                savedFrames++;
+            } else {
+                droppedFrames++;
+            }
+            next = waitingFrames.poll();
+            if (next != null) {
+                activeWrites++;
+            }
+            complete = checkCompleted();
+        }
+        if (next != null) {
+            write(next);
+        }
+        if (!complete && policy == BackpressurePolicy.BLOCK && readyCallback != null) {
+            readyCallback.run();
+        }
+        if (complete) {
+            notifyCompleted();
+        }
+    }
+
+    private boolean checkCompleted() {
+        if (completed || savedFrames + droppedFrames < frameCount) {
+            return false;
+        }
+        completed = true;
+        return true;
+    }
+
+    private void notifyCompleted() {
+        // the frames still being encoded are finished
+        executor.shutdown();
+        final int saved;
+        final int dropped;
+        synchronized (this) {
+            saved = savedFrames;
+            dropped = droppedFrames;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.onBurstCompleted(saved, dropped);
+                }
+            }
+        });
+    }
+
+    /**
+     * Frames are encoded off the camera thread, then written like any other picture.
+     */
+    private void write(final Frame frame) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer jpeg;
+                Runnable releaseCallback = frame.releaseCallback;
+                if (frame.format == ImageFormat.NV21) {
+                    jpeg = compressToJpeg(frame);
+                    // the preview buffer is not needed once it is encoded
+                    frame.release();
+                    releaseCallback = null;
+                    if (jpeg == null) {
+                        onFrameDone(false);
+                        return;
+                    }
+                    // preview frames are never rotated by the camera
+                    jpeg = BaseCameraView.orientImage(jpeg, frame.rotation, true);
+                } else {
+                    jpeg = BaseCameraView.orientImage(frame.data, frame.rotation, frame.exifRotationEnabled);
+                    if (jpeg != frame.data) {
+                        // the tag was inserted into a copy
+                        frame.release();
+                        releaseCallback = null;
+                    }
+                }
+                MediaDestination destination = outputTarget.createDestination(OutputTarget.MEDIA_TYPE_IMAGE,
+                        "_" + frame.index);
+                mediaWriter.write(new MediaWriteRequest(jpeg, destination, false, new FrameResultListener(),
+                        releaseCallback, derivedOutputs, outputTarget));
+            }
+        });
+    }
+
+    @SuppressWarnings("checkstyle:illegalcatch")
+    private static ByteBuffer compressToJpeg(Frame frame) {
+        JpegOutputStream stream = new JpegOutputStream(frame.width * frame.height / 2);
+        try {
+            YuvImage yuvImage = new YuvImage(frame.data.array(), frame.format, frame.width, frame.height, null);
+            if (yuvImage.compressToJpeg(new Rect(0, 0, frame.width, frame.height), JPEG_QUALITY, stream)) {
+                return stream.toByteBuffer();
+            }
+            Log.d(LOG_TAG, "Cannot compress the frame");
+        } catch (RuntimeException e) {
+            Log.d(LOG_TAG, "Cannot compress the frame: " + e.getMessage());
+        }
+        return null;
+    }
+
+    static class Frame {
+        final ByteBuffer data;
+        final int format;
+        final int width;
+        final int height;
+        final int rotation;
+        final boolean exifRotationEnabled;
+        private final Runnable releaseCallback;
+        private int index;
+
+        /**
+         * The rotation and whether it is only written to the EXIF tag are those of the capture,
+         * like for a single picture.
+         */
+        Frame(ByteBuffer data, int format, int width, int height, int rotation, boolean exifRotationEnabled,
+              Runnable releaseCallback) {
+            this.data = data;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.exifRotationEnabled = exifRotationEnabled;
+            this.releaseCallback = releaseCallback;
+        }
+
+        void release() {
+            if (releaseCallback != null) {
+                releaseCallback.run();
+            }
+        }
+    }
+
+    private class FrameResultListener implements OnImageResultListener {
+
+        @Override
+        public void onImageSaved() {
+            if (frameListener != null) {
+                frameListener.onImageSaved();
+            }
+        }
+
+        @Override
+        public void onImageSaved(ImageSaveResult result) {
+            // writes rejected by a full media writer count as dropped
+            onFrameDone(result.isSuccessful());
+            if (frameListener instanceof OnImageResultListener) {
+                ((OnImageResultListener) frameListener).onImageSaved(result);
+            }
+        }
+    }
+
+    /**
+     * Hands out its buffer without copying it.
+     */
+    private static class JpegOutputStream extends ByteArrayOutputStream {
+
+        JpegOutputStream(int size) {
+            super(size);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.supercharge.sccameraview;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct buffers for image data that has to outlive its source, e.g. an Image that must
+ * be returned to its ImageReader before the write finishes. Every buffer the pool has to allocate
+ * is counted, so once the pool is warm the allocation count should stay flat.
+ */
+class ByteBufferPool {
+
+    private final int maxPooledBuffers;
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final AtomicLong allocationCount = new AtomicLong();
+
+    ByteBufferPool(int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    ByteBuffer acquire(int capacity) {
+        synchronized (buffers) {
+            Iterator<ByteBuffer> iterator = buffers.iterator();
+            while (iterator.hasNext()) {
+                ByteBuffer buffer = iterator.next();
+                if (buffer.capacity() >= capacity) {
+                    iterator.remove();
+                    buffer.clear();
+                    buffer.limit(capacity);
+                    return buffer;
+                }
+            }
+        }
+        allocationCount.incrementAndGet();
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    ByteBuffer copyOf(ByteBuffer source) {
+        ByteBuffer buffer = acquire(source.remaining());
+        buffer.put(source);
+        buffer.flip();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        synchronized (buffers) {
+            if (buffers.size() < maxPooledBuffers) {
+                buffers.addLast(buffer);
+            }
+        }
+    }
+
+    long getAllocationCount() {
+        return allocationCount.get();
+    }
+}
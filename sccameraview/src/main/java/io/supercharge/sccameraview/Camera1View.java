@@ -1,25 +1,56 @@
 package io.supercharge.sccameraview;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.media.CamcorderProfile;
 import android.media.MediaRecorder;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Based on https://github.com/googlesamples/android-MediaRecorder
  */
 public class Camera1View extends BaseCameraView {
 
+    private static final int PREVIEW_BUFFER_COUNT = 3;
+    private static final int MAX_LEASED_PREVIEW_FRAMES = 8;
+    private static final int DEFAULT_FPS = 30;
+    private static final int AREA_BOUND = 1000;
+
     protected Camera camera;
     private MediaRecorder mediaRecorder;
     private Camera.Size videoSize;
+    private int previewWidth;
+    private int previewHeight;
     private String cameraFlashMode;
     private String cameraFocusMode;
+    private final PreviewBufferPool previewBufferPool = new PreviewBufferPool(MAX_LEASED_PREVIEW_FRAMES);
+    private OnPreviewFrameListener previewFrameListener;
+    private int registeredBufferSize;
+    private final List<byte[]> registeredBuffers = new ArrayList<>();
+    private long burstIntervalMillis;
+    private long lastBurstFrameTime;
+    private boolean burstFirstFrame;
+    private boolean previewRunning;
+    private boolean videoSnapshotSupported;
+    private int appliedRotation = -1;
+    private MediaDestination videoDestination;
+    private int[] previewFpsRange;
+    private volatile CameraCapabilities activeCapabilities;
+    private List<Integer> zoomRatios;
+    private long frameIntervalMillis = TimeUnit.SECONDS.toMillis(1) / DEFAULT_FPS;
+    private long lastZoomUpdateTime;
+    private final AtomicBoolean zoomUpdateScheduled = new AtomicBoolean();
 
     public Camera1View(Context context) {
         super(context);
@@ -27,76 +58,465 @@ public class Camera1View extends BaseCameraView {
 
     @Override
     public void startPreview() {
-        if (isAvailable()) {
-            openCamera();
-        } else {
-            setSurfaceTextureListener(surfaceTextureListener);
+        // also needed while the surface is available, to see the first preview frame
+        setSurfaceTextureListener(surfaceTextureListener);
+        if (!isAvailable()) {
+            return;
         }
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                if (stateMachine.getState() == CameraState.STREAMING && !previewRunning) {
+                    // taking a picture stopped the preview of the open camera
+                    stateMachine.requestReconfigure();
+                } else {
+                    stateMachine.requestOpen();
+                }
+            }
+        });
     }
 
     @Override
     public void stopPreview() {
-        releaseMediaRecorder();
-        releaseCamera();
+        cancelBurst();
+        stateMachine.requestClose();
     }
 
+    @SuppressWarnings("checkstyle:illegalcatch")
     @Override
     void openCamera() {
         cameraId = getDefaultCameraId();
-        camera = Camera.open(cameraId);
-
+        try {
+            camera = Camera.open(cameraId);
+        } catch (RuntimeException e) {
+            // the camera is in use, disabled or does not exist
+            Log.e(LOG_TAG, e.getMessage());
+            cameraCallback.onError();
+            return;
+        }
         Camera.Parameters parameters = camera.getParameters();
-        Camera.Size previewSize = ratioSizeList.get(selectedRatioIdx).getSize(camera);
-        videoSize = ratioSizeList.get(selectedRatioIdx).getSize(camera);
-        parameters.setPreviewSize(previewSize.width, previewSize.height);
-        parameters.setPictureSize(previewSize.width, previewSize.height);
+        CameraCapabilities capabilities = loadCapabilities(parameters);
+        if (!hasRatioSizes()) {
+            // read from the camera just opened on a cold cache, the layout waits for them
+            initRatioSizes(capabilities.aspectRatios);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    changeAspectRatio(getSelectedRatioIdx());
+                    if (getParent() != null) {
+                        getParent().requestLayout();
+                    }
+                }
+            });
+        }
 
-        if (parameters.getSupportedFlashModes() != null &&
-                parameters.getSupportedFlashModes().contains(cameraFlashMode)) {
+        if (capabilities.flashModes.contains(cameraFlashMode)) {
             parameters.setFlashMode(cameraFlashMode);
         }
-        if (parameters.getSupportedFocusModes() != null &&
-                parameters.getSupportedFocusModes().contains(cameraFocusMode)) {
+        if (capabilities.focusModes.contains(cameraFocusMode)) {
             parameters.setFocusMode(cameraFocusMode);
         }
 
-        parameters.setRotation(ORIENTATION_270);
-        camera.setDisplayOrientation(ORIENTATION_90);
+        activeCapabilities = capabilities;
+        zoomRatios = parameters.isZoomSupported() ? parameters.getZoomRatios() : null;
+        zoom = Math.min(zoom, getMaxZoomRatio(parameters));
+        if (zoomRatios != null) {
+            parameters.setZoom(getZoomIndex(zoom));
+        }
+
+        sensorOrientation = capabilities.sensorOrientation;
+        appliedRotation = getJpegRotationHint();
+        parameters.setRotation(appliedRotation);
+        camera.setDisplayOrientation(getDisplayOrientation(sensorOrientation, getDisplayRotation(),
+                frontFacingCameraActive));
         camera.setParameters(parameters);
+        cameraCallback.onOpened();
+        prewarmOppositeCamera();
+    }
+
+    @SuppressWarnings("checkstyle:illegalcatch")
+    @Override
+    void configureCamera() {
+        AspectRatio aspectRatio = getSelectedRatio();
+        if (camera == null || aspectRatio == null) {
+            cameraCallback.onError();
+            return;
+        }
+        if (previewRunning) {
+            // preview sizes can only be changed while the preview is stopped, the camera stays open
+            camera.stopPreview();
+            previewRunning = false;
+        }
         try {
+            Camera.Parameters parameters = camera.getParameters();
+            setOutputSizes(parameters, aspectRatio);
+            camera.setParameters(parameters);
+            videoSnapshotSupported = parameters.isVideoSnapshotSupported();
+            int[] fpsRange = new int[2];
+            parameters.getPreviewFpsRange(fpsRange);
+            int maxFps = fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000;
+            frameIntervalMillis = TimeUnit.SECONDS.toMillis(1) / (maxFps > 0 ? maxFps : DEFAULT_FPS);
+            installPreviewCallback();
             camera.setPreviewTexture(getSurfaceTexture());
+            if (switchStartTime != 0) {
+                camera.setOneShotPreviewCallback(new Camera.PreviewCallback() {
+                    @Override
+                    public void onPreviewFrame(byte[] data, Camera camera) {
+                        onCameraSwitched();
+                        installPreviewCallback();
+                    }
+                });
+                // the one-shot callback replaced the buffered callback and cleared its buffers
+                releaseCallbackBuffers();
+            }
             camera.startPreview();
-        } catch (IOException e) {
+            previewRunning = true;
+            onSessionConfigured();
+        } catch (IOException | RuntimeException e) {
             Log.e(LOG_TAG, e.getMessage());
+            cameraCallback.onError();
+        }
+    }
+
+    @Override
+    void closeCamera() {
+        releaseMediaRecorder();
+        releaseCamera();
+        cameraCallback.onClosed();
+    }
+
+    private Camera.Size toSize(AspectRatio aspectRatio, int index) {
+        return camera.new Size(aspectRatio.getWidth(index), aspectRatio.getHeight(index));
+    }
+
+    private void setOutputSizes(Camera.Parameters parameters, AspectRatio aspectRatio) {
+        Camera.Size previewSize = toSize(aspectRatio,
+                SizeSelector.choosePreviewSize(aspectRatio, getWidth(), getHeight()));
+        previewWidth = previewSize.width;
+        previewHeight = previewSize.height;
+        parameters.setPreviewSize(previewSize.width, previewSize.height);
+
+        // without capabilities the still and the video fall back to the preview size
+        CameraCapabilities capabilities = activeCapabilities;
+        AspectRatio pictureRatio = capabilities != null
+                ? SizeSelector.findClosest(capabilities.pictureRatios, aspectRatio) : null;
+        Camera.Size pictureSize = pictureRatio != null
+                ? camera.new Size(pictureRatio.getWidth(), pictureRatio.getHeight()) : previewSize;
+        parameters.setPictureSize(pictureSize.width, pictureSize.height);
+
+        AspectRatio videoRatio = capabilities != null
+                ? SizeSelector.findClosest(capabilities.videoRatios, aspectRatio) : null;
+        if (videoRatio != null) {
+            videoSize = toSize(videoRatio, chooseVideoSize(videoRatio));
+        } else {
+            videoSize = previewSize;
         }
     }
 
     @Override
-    public void takePicture() {
-        camera.takePicture(null, null, null, new Camera.PictureCallback() {
+    void captureStill() {
+        if (camera == null || !previewRunning) {
+            return;
+        }
+        if (recordingVideo) {
+            if (!videoSnapshotSupported) {
+                Log.d(LOG_TAG, "Video snapshot is not supported by the camera");
+                return;
+            }
+            // a video snapshot leaves the preview and the recording running
+        } else {
+            // the preview stops until startPreview() is called again
+            previewRunning = false;
+        }
+        captureRotation = getJpegRotation();
+        applyRotationHint();
+        camera.takePicture(shutterCallback, null, null, new Camera.PictureCallback() {
             @Override
             public void onPictureTaken(byte[] imageData, Camera camera) {
-                releaseCamera();
-                saveImage(imageData);
+                cameraCallback.onPictureTaken(ByteBuffer.wrap(imageData), null);
+            }
+        });
+    }
+
+    /**
+     * Updates the rotation the camera applies to the pictures, only when the device was turned
+     * since the last picture.
+     */
+    @SuppressWarnings("checkstyle:illegalcatch")
+    private void applyRotationHint() {
+        int rotation = getJpegRotationHint();
+        if (rotation == appliedRotation) {
+            return;
+        }
+        try {
+            Camera.Parameters parameters = camera.getParameters();
+            parameters.setRotation(rotation);
+            camera.setParameters(parameters);
+            appliedRotation = rotation;
+        } catch (RuntimeException e) {
+            // the picture gets the rotation through the EXIF tag instead
+            Log.e(LOG_TAG, "Cannot set the picture rotation: " + e.getMessage());
+        }
+    }
+
+    private final Camera.ShutterCallback shutterCallback = new Camera.ShutterCallback() {
+        @Override
+        public void onShutter() {
+            cameraCallback.onCaptureCompleted();
+        }
+    };
+
+    @Override
+    public void takeBurst(final int count, final long intervalMillis) {
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                if (camera == null || count <= 0) {
+                    return;
+                }
+                captureRotation = getJpegRotation();
+                startBurstPipeline(count);
+                burstIntervalMillis = intervalMillis;
+                burstFirstFrame = true;
+                installPreviewCallback();
             }
         });
     }
 
     @Override
-    public void changeAspectRatio(int position) {
-        if(!ratioSizeList.isEmpty()) {
-            ASPECT_RATIO = ratioSizeList.get(position).getRatio();
+    void applyZoom(float zoom) {
+        if (!zoomUpdateScheduled.compareAndSet(false, true)) {
+            // the scheduled update picks up the latest zoom
+            return;
         }
+        long delayMillis = Math.max(0, lastZoomUpdateTime + frameIntervalMillis - SystemClock.elapsedRealtime());
+        cameraThread.postDelayed(zoomUpdateTask, delayMillis);
     }
 
-    public void switchCamera() {
-        stopPreview();
-        frontFacingCameraActive = !frontFacingCameraActive;
-        ratioSizeList = new ArrayList<>();
-        loadAspectRatios();
+    private final Runnable zoomUpdateTask = new Runnable() {
+        @SuppressWarnings("checkstyle:illegalcatch")
+        @Override
+        public void run() {
+            zoomUpdateScheduled.set(false);
+            if (camera == null || zoomRatios == null) {
+                return;
+            }
+            lastZoomUpdateTime = SystemClock.elapsedRealtime();
+            try {
+                Camera.Parameters parameters = camera.getParameters();
+                parameters.setZoom(getZoomIndex(zoom));
+                camera.setParameters(parameters);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, e.getMessage());
+            }
+        }
+    };
+
+    private int getZoomIndex(float zoom) {
+        // zoom ratios are ascending percentages, the first one is 100
+        int zoomPercent = Math.round(zoom * 100);
+        int index = 0;
+        while (index < zoomRatios.size() - 1 && zoomRatios.get(index + 1) <= zoomPercent) {
+            index++;
+        }
+        return index;
+    }
+
+    private static float getMaxZoomRatio(Camera.Parameters parameters) {
+        if (!parameters.isZoomSupported()) {
+            return 1f;
+        }
+        List<Integer> ratios = parameters.getZoomRatios();
+        return ratios.get(parameters.getMaxZoom()) / 100f;
+    }
+
+    @Override
+    public void focusAt(float x, float y) {
+        if (getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        final float viewX = x / getWidth();
+        final float viewY = y / getHeight();
+        cameraThread.post(new Runnable() {
+            @SuppressWarnings("checkstyle:illegalcatch")
+            @Override
+            public void run() {
+                CameraCapabilities capabilities = activeCapabilities;
+                if (camera == null || !previewRunning || capabilities == null) {
+                    return;
+                }
+                float[] point = mapViewPointToSensor(viewX, viewY, capabilities.sensorOrientation,
+                        capabilities.frontFacing);
+                // camera areas span -1000..1000 over the current field of view, zoom included
+                int halfSize = Math.round(AREA_BOUND * FOCUS_AREA_SIZE);
+                int centerX = Math.round(point[0] * 2 * AREA_BOUND) - AREA_BOUND;
+                int centerY = Math.round(point[1] * 2 * AREA_BOUND) - AREA_BOUND;
+                Rect area = new Rect(Math.max(-AREA_BOUND, centerX - halfSize),
+                        Math.max(-AREA_BOUND, centerY - halfSize),
+                        Math.min(AREA_BOUND, centerX + halfSize),
+                        Math.min(AREA_BOUND, centerY + halfSize));
+                List<Camera.Area> areas = Collections.singletonList(new Camera.Area(area, AREA_BOUND));
+
+                try {
+                    Camera.Parameters parameters = camera.getParameters();
+                    if (parameters.getMaxNumMeteringAreas() > 0) {
+                        parameters.setMeteringAreas(areas);
+                    }
+                    boolean focus = parameters.getMaxNumFocusAreas() > 0
+                            && capabilities.focusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO);
+                    if (focus) {
+                        camera.cancelAutoFocus();
+                        parameters.setFocusAreas(areas);
+                        parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+                    }
+                    camera.setParameters(parameters);
+                    if (focus) {
+                        camera.autoFocus(new Camera.AutoFocusCallback() {
+                            @Override
+                            public void onAutoFocus(boolean success, Camera camera) {
+                                // the focus stays locked on the area until the next tap
+                            }
+                        });
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    void onFrameAnalysisChanged() {
+        postInstallPreviewCallback();
+    }
+
+    public void setPreviewFrameListener(OnPreviewFrameListener previewFrameListener) {
+        this.previewFrameListener = previewFrameListener;
+        postInstallPreviewCallback();
+    }
+
+    public long getPreviewBufferHitCount() {
+        return previewBufferPool.getHitCount();
+    }
+
+    public long getPreviewBufferMissCount() {
+        return previewBufferPool.getMissCount();
+    }
+
+    private void postInstallPreviewCallback() {
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                installPreviewCallback();
+            }
+        });
+    }
+
+    private void installPreviewCallback() {
+        if (camera == null) {
+            return;
+        }
+        if (!frameAnalysisDispatcher.hasAnalyzers() && previewFrameListener == null && !isBurstActive()) {
+            camera.setPreviewCallbackWithBuffer(null);
+            releaseCallbackBuffers();
+            return;
+        }
+
+        int bufferSize = PreviewBufferPool.getBufferSize(previewWidth, previewHeight);
+        if (registeredBufferSize != bufferSize && !registeredBuffers.isEmpty()) {
+            // buffers of the old size would be dropped by the camera one by one
+            camera.setPreviewCallbackWithBuffer(null);
+            releaseCallbackBuffers();
+        }
+        previewBufferPool.setBufferSize(bufferSize);
+        camera.setPreviewCallbackWithBuffer(previewCallback);
+        if (registeredBufferSize != bufferSize) {
+            registeredBufferSize = bufferSize;
+            for (int i = 0; i < PREVIEW_BUFFER_COUNT; i++) {
+                addCallbackBuffer(previewBufferPool.acquire());
+            }
+        }
+    }
+
+    private void addCallbackBuffer(byte[] buffer) {
+        registeredBuffers.add(buffer);
+        camera.addCallbackBuffer(buffer);
+    }
+
+    /**
+     * Returns the buffers the camera holds to the pool, after it cleared its buffer queue.
+     */
+    private void releaseCallbackBuffers() {
+        for (byte[] buffer : registeredBuffers) {
+            previewBufferPool.release(buffer);
+        }
+        registeredBuffers.clear();
+        registeredBufferSize = 0;
+    }
+
+    private boolean isBurstFrameDue(long now) {
+        // a full blocking burst skips preview frames until a frame is written
+        return isBurstReady() && (burstFirstFrame || now - lastBurstFrameTime >= burstIntervalMillis);
+    }
+
+    private final Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            if (data == null) {
+                // the buffer was too small for the current preview size
+                return;
+            }
+            registeredBuffers.remove(data);
+            if (frameAnalysisDispatcher.hasAnalyzers()) {
+                Frame analysisFrame = frameAnalysisDispatcher.obtainFrame(ImageFormat.NV21, previewWidth,
+                        previewHeight, data.length, System.nanoTime());
+                System.arraycopy(data, 0, analysisFrame.data, 0, data.length);
+                frameAnalysisDispatcher.dispatch(analysisFrame);
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            boolean burstFrame = isBurstFrameDue(now);
+            OnPreviewFrameListener listener = previewFrameListener;
+            final PreviewFrame frame = burstFrame || listener != null
+                    ? previewBufferPool.lease(data, previewWidth, previewHeight, System.nanoTime())
+                    : null;
+            if (frame == null) {
+                addCallbackBuffer(data);
+                return;
+            }
+            // the leased buffer is replaced right away, so the camera never runs dry
+            addCallbackBuffer(previewBufferPool.acquire());
+
+            if (burstFrame) {
+                burstFirstFrame = false;
+                lastBurstFrameTime = now;
+                frame.retain();
+                offerBurstFrame(ByteBuffer.wrap(data), ImageFormat.NV21, previewWidth, previewHeight, new Runnable() {
+                    @Override
+                    public void run() {
+                        frame.release();
+                    }
+                });
+                if (!isBurstActive()) {
+                    installPreviewCallback();
+                }
+            }
+            if (listener != null) {
+                frame.retain();
+                listener.onPreviewFrame(frame);
+            }
+            frame.release();
+        }
+    };
+
+    @Override
+    public void changeAspectRatio(int position) {
+        applyAspectRatio(position);
     }
 
     protected void releaseCamera() {
+        releaseCallbackBuffers();
+        previewRunning = false;
         if (camera != null) {
             camera.release();
             camera = null;
@@ -104,6 +524,8 @@ public class Camera1View extends BaseCameraView {
     }
 
     private void releaseMediaRecorder() {
+        // every path that ends a recording, or aborts one, ends up here
+        recordingVideo = false;
         if (mediaRecorder != null) {
             // clear recorder configuration
             mediaRecorder.reset();
@@ -115,31 +537,88 @@ public class Camera1View extends BaseCameraView {
                 // Lock camera for later use i.e taking it back from MediaRecorder.
                 // MediaRecorder doesn't need it anymore and we will release it if the activity pauses.
                 camera.lock();
+                restorePreviewFpsRange();
             }
         }
+        if (videoDestination != null) {
+            // not committed, the recording failed or was not stopped
+            videoDestination.abort();
+            videoDestination = null;
+        }
     }
 
     @Override
-    public void startRecordingVideo() {
-        if (prepareVideoRecorder()) {
+    void startVideoRecording() {
+        if (camera == null || recordingVideo) {
+            return;
+        }
+        if (!prepareVideoRecorder()) {
+            releaseMediaRecorder();
+            return;
+        }
+        try {
             mediaRecorder.start();
-            recordingVideo = true;
-        } else {
+        } catch (IllegalStateException e) {
+            Log.e(LOG_TAG, "Cannot start the recorder: " + e.getMessage());
             releaseMediaRecorder();
+            stateMachine.requestReconfigure();
+            return;
+        }
+        recordingVideo = true;
+        cameraCallback.onRecordingStarted();
+    }
+
+    /**
+     * Sets the preview FPS range to the frame rate of the recording, and the recorder to the rate
+     * the camera really delivers. The preview range is restored once the recorder is released.
+     */
+    @SuppressWarnings("checkstyle:illegalcatch")
+    private void applyRecordingFrameRate(CamcorderProfile profile) {
+        try {
+            Camera.Parameters parameters = camera.getParameters();
+            List<int[]> supportedRanges = parameters.getSupportedPreviewFpsRange();
+            if (supportedRanges == null || supportedRanges.isEmpty()) {
+                return;
+            }
+            // the ranges are in frames per 1000 seconds
+            int[] range = chooseRecordingFpsRange(supportedRanges.toArray(new int[supportedRanges.size()][]),
+                    profile.videoFrameRate * 1000);
+            int[] currentRange = new int[2];
+            parameters.getPreviewFpsRange(currentRange);
+            parameters.setPreviewFpsRange(range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                    range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+            camera.setParameters(parameters);
+            previewFpsRange = currentRange;
+            profile.videoFrameRate = Math.min(profile.videoFrameRate,
+                    range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Cannot set the recording frame rate: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("checkstyle:illegalcatch")
+    private void restorePreviewFpsRange() {
+        if (previewFpsRange == null) {
+            return;
+        }
+        try {
+            Camera.Parameters parameters = camera.getParameters();
+            parameters.setPreviewFpsRange(previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                    previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+            camera.setParameters(parameters);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Cannot restore the preview frame rate: " + e.getMessage());
         }
+        previewFpsRange = null;
     }
 
     private boolean prepareVideoRecorder() {
         mediaRecorder = new MediaRecorder();
 
-        Camera.CameraInfo info = new Camera.CameraInfo();
-        Camera.getCameraInfo(cameraId, info);
+        mediaRecorder.setOrientationHint(getJpegRotation());
 
-        if (info.orientation == SENSOR_ORIENTATION_DEFAULT_DEGREES) {
-            mediaRecorder.setOrientationHint(ORIENTATION_90);
-        } else {
-            mediaRecorder.setOrientationHint(ORIENTATION_270);
-        }
+        CamcorderProfile profile = getRecorderProfile(videoSize.width, videoSize.height);
+        applyRecordingFrameRate(profile);
 
         // Step 1: Unlock and set camera to MediaRecorder
         camera.unlock();
@@ -150,18 +629,18 @@ public class Camera1View extends BaseCameraView {
         mediaRecorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);
 
         // Step 3: Set a CamcorderProfile (requires API Level 8 or higher)
-        CamcorderProfile profile = getCamcorderProfile();
-        profile.videoFrameWidth = videoSize.width;
-        profile.videoFrameHeight = videoSize.height;
-
         mediaRecorder.setProfile(profile);
-        mediaRecorder.setVideoEncodingBitRate(BITRATE);
 
         // Step 4: Set output file
-        mediaRecorder.setOutputFile(getOutputMediaFile(MEDIA_TYPE_VIDEO).toString());
+        videoDestination = openVideoDestination();
+        if (videoDestination == null) {
+            releaseMediaRecorder();
+            return false;
+        }
 
         // Step 5: Prepare configured MediaRecorder
         try {
+            setRecorderOutput(mediaRecorder, videoDestination);
             mediaRecorder.prepare();
         } catch (IllegalStateException e) {
             Log.e(LOG_TAG, e.getMessage());
@@ -177,22 +656,32 @@ public class Camera1View extends BaseCameraView {
 
     @SuppressWarnings("checkstyle:illegalcatch")
     @Override
-    public void stopRecordingVideo() {
+    void stopVideoRecording() {
+        if (mediaRecorder == null) {
+            recordingVideo = false;
+            return;
+        }
         try {
             mediaRecorder.stop();  // stop the recording
+            commitVideoDestination(videoDestination);
+            videoDestination = null;
         } catch (RuntimeException e) {
             // RuntimeException is thrown when stop() is called immediately after start().
             // In this case the output file is not properly constructed ans should be deleted.
             Log.e(LOG_TAG, e.getMessage());
         }
-        releaseMediaRecorder(); // release the MediaRecorder object
-        camera.lock();         // take camera access back from MediaRecorder
-        releaseCamera();
-        recordingVideo = false;
-        startPreview();
+        releaseMediaRecorder(); // release the MediaRecorder object and lock the camera
+        cameraCallback.onRecordingStopped();
+        // restart the preview on the camera taken back from the recorder
+        stateMachine.requestReconfigure();
     }
 
     private int getDefaultCameraId() {
+        CameraCapabilities capabilities = CameraCapabilityCache.getInstance().get(frontFacingCameraActive);
+        if (capabilities != null) {
+            return Integer.parseInt(capabilities.cameraId);
+        }
+
         int position = frontFacingCameraActive ?  Camera.CameraInfo.CAMERA_FACING_FRONT
                 : Camera.CameraInfo.CAMERA_FACING_BACK;
         // Find the total number of cameras available
@@ -203,29 +692,75 @@ public class Camera1View extends BaseCameraView {
         for (int i = 0; i < numberOfCameras; i++) {
             Camera.getCameraInfo(i, cameraInfo);
             if (cameraInfo.facing == position) {
-                return position;
+                return i;
             }
         }
 
         return -1;
     }
 
+    /**
+     * Only the cached ratios, on a cold cache they are read once the camera is open. Camera1 has no
+     * way to read the sizes of a camera without opening it.
+     */
     @Override
     public void collectRatioSizes() {
-        ratioSizeList.clear();
-        camera = Camera.open(getDefaultCameraId());
-        List<Camera.Size> previewSizes = camera.getParameters().getSupportedPreviewSizes();
-
-        if (previewSizes != null) {
-            List<Double> ratioList = new ArrayList<>();
-            for (Camera.Size size : previewSizes) {
-                double ratio = (double) size.width / (double) size.height;
-                if (!ratioList.contains(ratio)) {
-                    ratioList.add(ratio);
-                    ratioSizeList.add(new AspectRatio(ratio, size.width, size.height));
-                }
+        CameraCapabilities capabilities = CameraCapabilityCache.getInstance().get(frontFacingCameraActive);
+        if (capabilities != null) {
+            setRatioSizes(capabilities.aspectRatios);
+        }
+    }
+
+    /**
+     * The capabilities of the open camera, read from its parameters on a cold cache. The other
+     * cameras are never opened to read theirs, they come from the capability snapshot or are read
+     * when the view switches to them.
+     */
+    private CameraCapabilities loadCapabilities(Camera.Parameters parameters) {
+        CameraCapabilityCache cache = CameraCapabilityCache.getInstance();
+        CameraCapabilities capabilities = cache.get(Integer.toString(cameraId));
+        if (capabilities != null) {
+            return capabilities;
+        }
+
+        Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+        Camera.getCameraInfo(cameraId, cameraInfo);
+        capabilities = new CameraCapabilities(Integer.toString(cameraId),
+                cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT,
+                collectAspectRatios(parameters.getSupportedPreviewSizes()),
+                collectAspectRatios(parameters.getSupportedPictureSizes()),
+                // null when the video shares the preview sizes
+                collectAspectRatios(parameters.getSupportedVideoSizes() != null
+                        ? parameters.getSupportedVideoSizes() : parameters.getSupportedPreviewSizes()),
+                cameraInfo.orientation,
+                parameters.getSupportedFocusModes(),
+                parameters.getSupportedFlashModes(),
+                null,
+                parameters.getSupportedFlashModes() != null,
+                false,
+                getMaxZoomRatio(parameters),
+                null,
+                parameters.getMaxNumFocusAreas(),
+                parameters.getMaxNumMeteringAreas(),
+                null);
+        cache.put(capabilities);
+        // the next start knows them before any camera is open
+        CapabilitySnapshotStore.save(getContext(), cache.getAll());
+        return capabilities;
+    }
+
+    private List<AspectRatio> collectAspectRatios(List<Camera.Size> sizes) {
+        List<AspectRatio> aspectRatios = new ArrayList<>();
+        if (sizes != null) {
+            int[] widths = new int[sizes.size()];
+            int[] heights = new int[sizes.size()];
+            for (int i = 0; i < widths.length; i++) {
+                widths[i] = sizes.get(i).width;
+                heights[i] = sizes.get(i).height;
             }
+            aspectRatios = AspectRatio.fromSizes(widths, heights, CameraCapabilityCache.getInstance().getRatioTolerance());
         }
+        return aspectRatios;
     }
 
     public void setCameraFlashMode(String cameraFlashMode) {
@@ -3,6 +3,7 @@ package io.supercharge.sccameraview;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -12,17 +13,19 @@ import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.MeteringRectangle;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.CamcorderProfile;
 import android.media.Image;
 import android.media.ImageReader;
+import android.media.MediaCodec;
 import android.media.MediaRecorder;
 import android.os.Build;
-import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.RequiresApi;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.Surface;
 
@@ -30,10 +33,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 
 /**
  * Based on https://github.com/googlesamples/android-Camera2Video
@@ -41,7 +43,10 @@ import java.util.concurrent.TimeUnit;
 @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
 public class Camera2View extends BaseCameraView {
 
-    private static final long LOCK_TIMEOUT = 2500;
+    private static final int ZSL_SPARE_IMAGES = 2;
+    private static final int BURST_MAX_IMAGES = 3;
+    private static final int STILL_MAX_IMAGES = 2;
+    private static final int ANALYSIS_MAX_IMAGES = 2;
 
     private CaptureRequest.Builder previewBuilder;
     private Size previewSize;
@@ -49,6 +54,17 @@ public class Camera2View extends BaseCameraView {
     private MediaRecorder mediaRecorder;
     private Size videoSize;
     private Size imageSize;
+    private Size snapshotSize;
+    private MediaDestination recordingDestination;
+    private Range<Integer> recordingFpsRange;
+    private Surface previewSurface;
+    private Surface recorderSurface;
+    private Size preparedVideoSize;
+    private int preparedRotation;
+    private boolean fastRecordStartEnabled;
+    private boolean recorderPrepared;
+    private boolean recorderInSession;
+    private boolean recordingToSessionSurface;
 
     CameraManager cameraManager;
     private CameraDevice cameraDevice;
@@ -57,172 +73,239 @@ public class Camera2View extends BaseCameraView {
     private final StateCallback stateCallback = new StateCallback();
 
     private ImageReader imageReader;
+    private final List<ImageReader> retiredImageReaders = new ArrayList<>();
+    private ImageReader analysisImageReader;
+    private int pendingImageWrites;
+    private ImageRing imageRing;
+    private boolean zeroShutterLagEnabled;
+    private int zeroShutterLagRingSize;
+    private boolean realtimeTimestamps;
+    // sensor timestamps of the stills captured next to the ring, whose images have not arrived yet
+    private final Set<Long> stillTimestamps = new HashSet<>();
 
-    private int sensorOrientation;
     private int cameraAutoFocusMode;
     private int cameraFlashMode;
-
-    private HandlerThread backgroundThread;
-    private Handler backgroundHandler;
-    private final Semaphore cameraOpenCloseLock = new Semaphore(1);
+    private final RepeatingRequestController repeatingRequest;
+    private volatile CameraCapabilities activeCapabilities;
 
     public Camera2View(Context context) {
         super(context);
         cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        repeatingRequest = new RepeatingRequestController(cameraThread);
+        repeatingRequest.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
     }
 
     @Override
     public void startPreview() {
-        startBackgroundThread();
-
-        if (isAvailable()) {
-            openCamera();
-        } else {
-            setSurfaceTextureListener(surfaceTextureListener);
+        // also needed while the surface is available, to see the first preview frame
+        setSurfaceTextureListener(surfaceTextureListener);
+        if (!isAvailable()) {
+            return;
         }
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                if (stateMachine.getState() == CameraState.STREAMING && null == previewSession) {
+                    // a still capture session replaced the preview session of the open camera
+                    stateMachine.requestReconfigure();
+                } else {
+                    stateMachine.requestOpen();
+                }
+            }
+        });
     }
 
     @Override
     public void stopPreview() {
-        closeCamera();
-        stopBackgroundThread();
-    }
-
-    private void startBackgroundThread() {
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
-    }
-
-    private void stopBackgroundThread() {
-        if (backgroundThread == null) {
-            return;
-        }
-
-        backgroundThread.quitSafely();
-        try {
-            backgroundThread.join();
-            backgroundThread = null;
-            backgroundHandler = null;
-        } catch (InterruptedException e) {
-            Log.e(LOG_TAG, e.getMessage());
-        }
+        cancelBurst();
+        stateMachine.requestClose();
     }
 
     @SuppressWarnings("MissingPermission")
     @Override
-    public void openCamera() {
+    void openCamera() {
         final Activity activity = (Activity) getContext();
         if (null == activity || activity.isFinishing()) {
+            cameraCallback.onError();
             return;
         }
 
         try {
-            if (!cameraOpenCloseLock.tryAcquire(LOCK_TIMEOUT, TimeUnit.MILLISECONDS)) {
-                throw new RuntimeException("Time out waiting to lock camera opening.");
+            CameraCapabilities capabilities = loadCapabilities();
+            if (capabilities == null) {
+                Log.e(LOG_TAG, "Cannot get available preview/video sizes");
+                cameraCallback.onError();
+                return;
             }
-            cameraIdString = getCameraId();
+            cameraIdString = capabilities.cameraId;
             cameraId = Integer.parseInt(cameraIdString);
 
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraIdString);
-            StreamConfigurationMap map = characteristics
-                    .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-
-            if (map == null) {
-                throw new RuntimeException("Cannot get available preview/video sizes");
-            }
-
-            if (ratioSizeList.isEmpty()) {
-                collectAspectRatios(map.getOutputSizes(SurfaceTexture.class));
-            }
-
-            previewSize = ratioSizeList.get(selectedRatioIdx).getSize();
-            videoSize = ratioSizeList.get(selectedRatioIdx).getSize();
-            imageSize = ratioSizeList.get(selectedRatioIdx).getSize();
-
-            sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            initRatioSizes(capabilities.aspectRatios);
+
+            sensorOrientation = capabilities.sensorOrientation;
+            realtimeTimestamps = capabilities.realtimeTimestamps;
+            activeCapabilities = capabilities;
+            // zero shutter lag pictures come from the repeating request, so it carries the rotation
+            repeatingRequest.set(CaptureRequest.JPEG_ORIENTATION, getJpegRotationHint());
+            // regions and crop are in the coordinates of the previous camera
+            repeatingRequest.reset(CaptureRequest.CONTROL_AF_REGIONS);
+            repeatingRequest.reset(CaptureRequest.CONTROL_AE_REGIONS);
+            repeatingRequest.reset(CaptureRequest.CONTROL_AF_MODE);
+            repeatingRequest.reset(CaptureRequest.SCALER_CROP_REGION);
+            zoom = Math.min(zoom, capabilities.maxZoom);
+            applyZoom(zoom);
             mediaRecorder = new MediaRecorder();
-            cameraManager.openCamera(cameraIdString, stateCallback, null);
-        } catch (CameraAccessException e) {
+            cameraManager.openCamera(cameraIdString, stateCallback, cameraThread.getHandler());
+        } catch (CameraAccessException | SecurityException e) {
             Log.e(LOG_TAG, e.getMessage());
+            cameraCallback.onError();
         } catch (NullPointerException e) {
             // Currently an NPE is thrown when the Camera2API is used but not supported on the
             // device this code runs.
             Log.e(LOG_TAG, e.getMessage());
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera opening.");
+            cameraCallback.onError();
         }
     }
 
-    private void collectAspectRatios(Size[] outputSizes) {
-        if (outputSizes != null) {
-            List<Double> ratioList = new ArrayList<>();
-            for (Size size : outputSizes) {
-                double ratio = (double) size.getWidth() / (double) size.getHeight();
-                if (!ratioList.contains(ratio)) {
-                    ratioList.add(ratio);
-                    ratioSizeList.add(new AspectRatio(ratio, size.getWidth(), size.getHeight()));
-                }
-            }
-            if (!ratioSizeList.isEmpty()) {
-                Collections.sort(ratioSizeList, new Comparator<AspectRatio>() {
-                    @Override
-                    public int compare(AspectRatio p1, AspectRatio p2) {
-                        return p1.getRatio() < p2.getRatio() ? -1 : 1;
-                    }
-                });
-            }
+    private static Size toSize(AspectRatio aspectRatio, int index) {
+        return new Size(aspectRatio.getWidth(index), aspectRatio.getHeight(index));
+    }
+
+    private void updateOutputSizes(AspectRatio aspectRatio) {
+        previewSize = toSize(aspectRatio, SizeSelector.choosePreviewSize(aspectRatio, getWidth(), getHeight()));
 
-            ASPECT_RATIO = ratioSizeList.get(selectedRatioIdx).getRatio();
+        AspectRatio pictureRatio = SizeSelector.findClosest(activeCapabilities.pictureRatios, aspectRatio);
+        imageSize = pictureRatio != null ? new Size(pictureRatio.getWidth(), pictureRatio.getHeight()) : previewSize;
+
+        AspectRatio videoRatio = SizeSelector.findClosest(activeCapabilities.videoRatios, aspectRatio);
+        if (videoRatio != null) {
+            videoSize = toSize(videoRatio, chooseVideoSize(videoRatio));
+        } else {
+            videoSize = previewSize;
         }
+
+        // preview, record and a JPEG of at most the record size is a guaranteed stream combination
+        snapshotSize = pictureRatio != null
+                ? toSize(pictureRatio, SizeSelector.chooseLargestSize(pictureRatio, videoSize.getWidth(),
+                videoSize.getHeight()))
+                : videoSize;
     }
 
-    public void switchCamera() {
-        stopPreview();
-        frontFacingCameraActive = !frontFacingCameraActive;
-        ratioSizeList = new ArrayList<>();
-        loadAspectRatios();
+    @Override
+    void onDeviceOrientationChanged() {
+        repeatingRequest.set(CaptureRequest.JPEG_ORIENTATION, getJpegRotationHint());
     }
 
-    private String getCameraId() throws CameraAccessException {
-        int camera = frontFacingCameraActive ? CameraCharacteristics.LENS_FACING_FRONT
-                                             : CameraCharacteristics.LENS_FACING_BACK;
-        for (String cameraId : cameraManager.getCameraIdList()) {
-            CameraCharacteristics cameraCharacteristics = cameraManager.getCameraCharacteristics(cameraId);
+    @Override
+    void onFrameAnalysisChanged() {
+        if (stateMachine.getState() != CameraState.CLOSED && !recordingVideo) {
+            stateMachine.requestReconfigure();
+        }
+    }
 
-            if (cameraCharacteristics.get(CameraCharacteristics.LENS_FACING)
-                    == camera) {
-                return cameraId;
-            }
+    @Override
+    void configureCamera() {
+        AspectRatio aspectRatio = getSelectedRatio();
+        if (aspectRatio == null) {
+            cameraCallback.onError();
+            return;
         }
-        return null;
+        // a new session on the open device is enough, the buffer size is set on the texture
+        updateOutputSizes(aspectRatio);
+        startPreviewSession();
     }
 
-    protected void closeCamera() {
-        try {
-            cameraOpenCloseLock.acquire();
-            closePreviewSession();
-            if (null != cameraDevice) {
-                cameraDevice.close();
-                cameraDevice = null;
+    private CameraCapabilities loadCapabilities() throws CameraAccessException {
+        CameraCapabilityCache cache = CameraCapabilityCache.getInstance();
+        CameraCapabilities capabilities = cache.get(frontFacingCameraActive);
+        if (capabilities != null) {
+            return capabilities;
+        }
+
+        // enumerate every camera at once, so switching later on costs nothing
+        for (String cameraId : cameraManager.getCameraIdList()) {
+            if (cache.get(cameraId) != null) {
+                continue;
             }
-            if (null != mediaRecorder) {
-                mediaRecorder.release();
-                mediaRecorder = null;
+            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (lensFacing == null || lensFacing == CameraMetadata.LENS_FACING_EXTERNAL || map == null) {
+                continue;
             }
-            if (null != imageReader) {
-                imageReader.close();
-                imageReader = null;
+
+            Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            Float maxZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+            Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+            Integer maxFocusRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+            Integer maxMeteringRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE);
+            Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            cache.put(new CameraCapabilities(cameraId,
+                    lensFacing == CameraMetadata.LENS_FACING_FRONT,
+                    collectAspectRatios(map.getOutputSizes(SurfaceTexture.class)),
+                    collectAspectRatios(map.getOutputSizes(ImageFormat.JPEG)),
+                    collectAspectRatios(map.getOutputSizes(MediaRecorder.class)),
+                    sensorOrientation != null ? sensorOrientation : SENSOR_ORIENTATION_DEFAULT_DEGREES,
+                    null,
+                    null,
+                    characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES),
+                    flashAvailable != null && flashAvailable,
+                    timestampSource != null
+                            && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME,
+                    maxZoom != null ? maxZoom : 1f,
+                    activeArray != null
+                            ? new int[]{activeArray.left, activeArray.top, activeArray.right, activeArray.bottom}
+                            : null,
+                    maxFocusRegions != null ? maxFocusRegions : 0,
+                    maxMeteringRegions != null ? maxMeteringRegions : 0,
+                    toIntRanges(fpsRanges)));
+        }
+        return cache.get(frontFacingCameraActive);
+    }
+
+    private List<AspectRatio> collectAspectRatios(Size[] outputSizes) {
+        List<AspectRatio> aspectRatios = new ArrayList<>();
+        if (outputSizes != null) {
+            int[] widths = new int[outputSizes.length];
+            int[] heights = new int[outputSizes.length];
+            for (int i = 0; i < outputSizes.length; i++) {
+                widths[i] = outputSizes[i].getWidth();
+                heights[i] = outputSizes[i].getHeight();
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera closing.");
-        } finally {
-            cameraOpenCloseLock.release();
+            aspectRatios = AspectRatio.fromSizes(widths, heights, CameraCapabilityCache.getInstance().getRatioTolerance());
+        }
+        return aspectRatios;
+    }
+
+    @Override
+    protected void closeCamera() {
+        closePreviewSession();
+        if (null != cameraDevice) {
+            cameraDevice.close();
+            cameraDevice = null;
+        }
+        discardPreparedRecording();
+        recordingToSessionSurface = false;
+        if (null != mediaRecorder) {
+            mediaRecorder.release();
+            mediaRecorder = null;
+        }
+        abortRecordingDestination();
+        recordingVideo = false;
+        if (null != recorderSurface) {
+            recorderSurface.release();
+            recorderSurface = null;
         }
+        closeImageReader();
+        closeAnalysisImageReader();
+        cameraCallback.onClosed();
     }
 
     private void startPreviewSession() {
         if (null == cameraDevice || !isAvailable() || null == previewSize) {
+            cameraCallback.onError();
             return;
         }
         try {
@@ -230,67 +313,198 @@ public class Camera2View extends BaseCameraView {
             SurfaceTexture texture = getSurfaceTexture();
             assert texture != null;
             texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-            previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
 
-            Surface previewSurface = new Surface(texture);
-            previewBuilder.addTarget(previewSurface);
+            previewSurface = new Surface(texture);
+            List<Surface> surfaces = new ArrayList<>();
+            surfaces.add(previewSurface);
+
+            if (frameAnalysisDispatcher.hasAnalyzers()) {
+                setUpAnalysisImageReader();
+                surfaces.add(analysisImageReader.getSurface());
+            } else {
+                closeAnalysisImageReader();
+            }
+
+            // preview, recorder, still and analysis streams together are not a guaranteed
+            // combination, with analyzers the recording session is configured when it starts
+            if (fastRecordStartEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                    && analysisImageReader == null) {
+                prepareRecorder();
+                if (recorderPrepared) {
+                    // not a target until the recording starts, only the repeating request is swapped then
+                    surfaces.add(recorderSurface);
+                    recorderInSession = true;
+                }
+            }
 
-            cameraDevice.createCaptureSession(Collections.singletonList(previewSurface),
+            if (zeroShutterLagEnabled) {
+                // next to the recorder the ring would encode a full size JPEG of every frame, stills
+                // are captured on demand into the same reader instead. Only a JPEG of the record size
+                // is guaranteed next to the recorder on LIMITED and LEGACY devices.
+                int ringSize = recorderInSession ? 0 : zeroShutterLagRingSize;
+                setUpImageReader(recorderInSession ? snapshotSize : imageSize, ringSize + ZSL_SPARE_IMAGES,
+                        ringSize);
+                surfaces.add(imageReader.getSurface());
+            } else if (recorderInSession) {
+                setUpImageReader(snapshotSize, BURST_MAX_IMAGES, 0);
+                surfaces.add(imageReader.getSurface());
+            }
+
+            previewBuilder = createRepeatingRequestBuilder(CameraDevice.TEMPLATE_PREVIEW);
+            cameraDevice.createCaptureSession(surfaces,
                     new CameraCaptureSession.StateCallback() {
 
                         @Override
                         public void onConfigured(@NonNull CameraCaptureSession session) {
                             previewSession = session;
                             updatePreview();
+                            onSessionConfigured();
+                            onCameraSwitched();
                         }
 
                         @Override
                         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                            // failed
+                            cameraCallback.onError();
                         }
-                    }, backgroundHandler);
+                    }, cameraThread.getHandler());
         } catch (CameraAccessException e) {
             Log.e(LOG_TAG, e.getMessage());
+            cameraCallback.onError();
+        }
+    }
+
+    /**
+     * A repeating request targeting the preview and the readers fed with every frame.
+     */
+    private CaptureRequest.Builder createRepeatingRequestBuilder(int template) throws CameraAccessException {
+        CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(template);
+        builder.addTarget(previewSurface);
+        if (imageRing != null && imageReader != null) {
+            builder.addTarget(imageReader.getSurface());
         }
+        if (analysisImageReader != null) {
+            builder.addTarget(analysisImageReader.getSurface());
+        }
+        return builder;
     }
 
     private void updatePreview() {
         if (null == cameraDevice) {
             return;
         }
-        try {
-            setUpCaptureRequestBuilder(previewBuilder);
-            HandlerThread thread = new HandlerThread("CameraPreview");
-            thread.start();
-            previewSession.setRepeatingRequest(previewBuilder.build(), null, backgroundHandler);
-        } catch (CameraAccessException e) {
-            Log.e(LOG_TAG, e.getMessage());
-        }
+        repeatingRequest.attach(previewSession, previewBuilder);
     }
 
     private void closePreviewSession() {
+        repeatingRequest.detach();
+        recorderInSession = false;
         if (previewSession != null) {
             previewSession.close();
             previewSession = null;
         }
+        if (imageRing != null) {
+            imageRing.clear();
+        }
+        stillTimestamps.clear();
     }
 
-    private void setUpCaptureRequestBuilder(CaptureRequest.Builder builder) {
-        builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+    private void setUpImageReader(Size size, int maxImages, int ringSize) {
+        if (imageReader != null && imageReader.getMaxImages() == maxImages
+                && imageReader.getWidth() == size.getWidth()
+                && imageReader.getHeight() == size.getHeight()
+                && (imageRing != null) == (ringSize > 0)) {
+            return;
+        }
+        closeImageReader();
+        imageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.JPEG, maxImages);
+        imageReader.setOnImageAvailableListener(mImageAvailableListener, cameraThread.getHandler());
+        imageRing = ringSize > 0 ? new ImageRing(ringSize) : null;
+    }
+
+    private void setUpAnalysisImageReader() {
+        if (analysisImageReader != null && analysisImageReader.getWidth() == previewSize.getWidth()
+                && analysisImageReader.getHeight() == previewSize.getHeight()) {
+            return;
+        }
+        closeAnalysisImageReader();
+        analysisImageReader = ImageReader.newInstance(previewSize.getWidth(), previewSize.getHeight(),
+                ImageFormat.YUV_420_888, ANALYSIS_MAX_IMAGES);
+        analysisImageReader.setOnImageAvailableListener(analysisImageAvailableListener, cameraThread.getHandler());
+    }
+
+    private void closeAnalysisImageReader() {
+        if (null != analysisImageReader) {
+            analysisImageReader.close();
+            analysisImageReader = null;
+        }
+    }
+
+    private void closeImageReader() {
+        if (null != imageRing) {
+            imageRing.clear();
+            imageRing = null;
+        }
+        if (null != imageReader) {
+            synchronized (retiredImageReaders) {
+                // closing the reader would free the buffers of the images still being written
+                if (pendingImageWrites > 0) {
+                    retiredImageReaders.add(imageReader);
+                } else {
+                    imageReader.close();
+                }
+            }
+            imageReader = null;
+        }
     }
 
     @Override
-    public void startRecordingVideo() {
+    void startVideoRecording() {
+        if (recordingVideo) {
+            return;
+        }
+        if (recorderInSession && recorderPrepared && previewSession != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // the orientation hint is fixed by prepare, the device may have turned since
+            prepareRecorder();
+        }
+        if (recorderInSession && recorderPrepared && previewSession != null) {
+            startPreparedRecording();
+        } else {
+            startRecordingSession();
+        }
+    }
+
+    private void startPreparedRecording() {
+        try {
+            CaptureRequest.Builder recordBuilder = createRecordingRequestBuilder();
+            recordBuilder.addTarget(recorderSurface);
+            mediaRecorder.start();
+            recorderPrepared = false;
+            recordingToSessionSurface = true;
+            recordingVideo = true;
+            previewBuilder = recordBuilder;
+            updatePreview();
+            cameraCallback.onRecordingStarted();
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(LOG_TAG, e.getMessage());
+        }
+    }
+
+    private void startRecordingSession() {
         if (null == cameraDevice || !isAvailable() || null == previewSize) {
             return;
         }
         try {
             closePreviewSession();
-            setUpMediaRecorder();
+            discardPreparedRecording();
+            setUpMediaRecorder(null);
             SurfaceTexture texture = getSurfaceTexture();
             assert texture != null;
             texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
             previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            if (recordingFpsRange != null) {
+                previewBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, recordingFpsRange);
+            }
             List<Surface> surfaces = new ArrayList<>();
 
             // Set up Surface for the camera preview
@@ -303,6 +517,10 @@ public class Camera2View extends BaseCameraView {
             surfaces.add(recorderSurface);
             previewBuilder.addTarget(recorderSurface);
 
+            // stills are captured into this surface while recording, without a new session
+            setUpImageReader(snapshotSize, BURST_MAX_IMAGES, 0);
+            surfaces.add(imageReader.getSurface());
+
             // Start a capture session
             // Once the session starts, we can update the UI and start recording
             cameraDevice.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
@@ -311,139 +529,415 @@ public class Camera2View extends BaseCameraView {
                 public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
                     previewSession = cameraCaptureSession;
                     updatePreview();
-                    post(new Runnable() {
-                        @Override
-                        public void run() {
-                            // Start recording
-                            mediaRecorder.start();
-                        }
-                    });
+                    try {
+                        mediaRecorder.start();
+                    } catch (IllegalStateException e) {
+                        Log.e(LOG_TAG, "Cannot start the recorder: " + e.getMessage());
+                        abortRecordingSession();
+                        return;
+                    }
+                    // only now stopRecordingVideo() has a recording to stop
+                    recordingVideo = true;
+                    cameraCallback.onRecordingStarted();
                 }
 
                 @Override
                 public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                    // failed
+                    Log.e(LOG_TAG, "Cannot configure the recording session");
+                    abortRecordingSession();
                 }
-            }, backgroundHandler);
-            recordingVideo = true;
-        } catch (CameraAccessException | IOException e) {
+            }, cameraThread.getHandler());
+        } catch (CameraAccessException | IOException | IllegalStateException e) {
             Log.e(LOG_TAG, e.getMessage());
+            abortRecordingSession();
+        }
+    }
+
+    /**
+     * Resets the recorder of a recording that never started, removes its destination and brings
+     * the preview session back.
+     */
+    private void abortRecordingSession() {
+        recordingVideo = false;
+        if (mediaRecorder != null) {
+            mediaRecorder.reset();
+        }
+        abortRecordingDestination();
+        if (cameraDevice != null) {
+            stateMachine.requestReconfigure();
         }
     }
 
-    private void setUpMediaRecorder() throws IOException {
+    private void setUpMediaRecorder(Surface inputSurface) throws IOException {
         final Activity activity = (Activity) getContext();
         if (null == activity) {
             return;
         }
         mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
         mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
-        mediaRecorder.setOutputFile(getOutputMediaFile(MEDIA_TYPE_VIDEO).toString());
-
-        if (sensorOrientation == SENSOR_ORIENTATION_DEFAULT_DEGREES) {
-            mediaRecorder.setOrientationHint(ORIENTATION_90);
-        } else {
-            mediaRecorder.setOrientationHint(ORIENTATION_270);
+        recordingDestination = openVideoDestination();
+        if (recordingDestination == null) {
+            throw new IOException("No destination for the video");
         }
+        setRecorderOutput(mediaRecorder, recordingDestination);
 
-        CamcorderProfile profile = getCamcorderProfile();
-        profile.videoFrameWidth = videoSize.getWidth();
-        profile.videoFrameHeight = videoSize.getHeight();
+        preparedRotation = getJpegRotation();
+        mediaRecorder.setOrientationHint(preparedRotation);
 
+        CamcorderProfile profile = getRecorderProfile(videoSize.getWidth(), videoSize.getHeight());
+        recordingFpsRange = getRecordingFpsRange(profile.videoFrameRate);
+        if (recordingFpsRange != null) {
+            // the recorder is told the rate the camera really delivers
+            profile.videoFrameRate = Math.min(profile.videoFrameRate, recordingFpsRange.getUpper());
+        }
         mediaRecorder.setProfile(profile);
-        mediaRecorder.setVideoEncodingBitRate(BITRATE);
+        if (inputSurface != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            mediaRecorder.setInputSurface(inputSurface);
+        }
         mediaRecorder.prepare();
     }
 
+    private Range<Integer> getRecordingFpsRange(int frameRate) {
+        CameraCapabilities capabilities = activeCapabilities;
+        if (capabilities == null) {
+            return null;
+        }
+        int[] range = chooseRecordingFpsRange(capabilities.fpsRanges, frameRate);
+        return range != null ? new Range<>(range[0], range[1]) : null;
+    }
+
+    private static int[][] toIntRanges(Range<Integer>[] ranges) {
+        if (ranges == null) {
+            return null;
+        }
+        int[][] intRanges = new int[ranges.length][];
+        for (int i = 0; i < ranges.length; i++) {
+            intRanges[i] = new int[]{ranges[i].getLower(), ranges[i].getUpper()};
+        }
+        return intRanges;
+    }
+
+    /**
+     * Builder of the repeating request while recording, at the FPS range of the recorder.
+     */
+    private CaptureRequest.Builder createRecordingRequestBuilder() throws CameraAccessException {
+        CaptureRequest.Builder builder = createRepeatingRequestBuilder(CameraDevice.TEMPLATE_RECORD);
+        if (recordingFpsRange != null) {
+            builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, recordingFpsRange);
+        }
+        return builder;
+    }
+
+    /**
+     * Prepares the recorder on the persistent input surface, unless it is already prepared for the
+     * current video size and orientation.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void prepareRecorder() {
+        if (recorderPrepared && videoSize.equals(preparedVideoSize) && getJpegRotation() == preparedRotation) {
+            return;
+        }
+        discardPreparedRecording();
+        try {
+            if (recorderSurface == null) {
+                recorderSurface = MediaCodec.createPersistentInputSurface();
+            }
+            setUpMediaRecorder(recorderSurface);
+            preparedVideoSize = videoSize;
+            recorderPrepared = true;
+        } catch (IOException | IllegalStateException e) {
+            Log.e(LOG_TAG, e.getMessage());
+            mediaRecorder.reset();
+            abortRecordingDestination();
+        }
+    }
+
+    /**
+     * Resets a recorder prepared but never started, and removes the empty destination it opened.
+     */
+    private void discardPreparedRecording() {
+        if (!recorderPrepared) {
+            return;
+        }
+        recorderPrepared = false;
+        preparedVideoSize = null;
+        if (mediaRecorder != null) {
+            mediaRecorder.reset();
+        }
+        abortRecordingDestination();
+    }
+
+    private void abortRecordingDestination() {
+        if (recordingDestination != null) {
+            recordingDestination.abort();
+            recordingDestination = null;
+        }
+    }
+
+    private void commitRecordingDestination() {
+        if (recordingDestination != null) {
+            commitVideoDestination(recordingDestination);
+            recordingDestination = null;
+        }
+    }
+
     @Override
-    public void stopRecordingVideo() {
+    void stopVideoRecording() {
+        if (!recordingVideo) {
+            return;
+        }
+        if (recordingToSessionSurface) {
+            stopPreparedRecording();
+            return;
+        }
         mediaRecorder.stop();
         mediaRecorder.reset();
+        commitRecordingDestination();
 
         recordingVideo = false;
-        startPreview();
+        cameraCallback.onRecordingStopped();
+        // the recording session is replaced by a new preview session
+        stateMachine.requestReconfigure();
+    }
+
+    private void stopPreparedRecording() {
+        recordingToSessionSurface = false;
+        try {
+            // the recorder gets no more frames, the session and the preview keep running
+            previewBuilder = createRepeatingRequestBuilder(CameraDevice.TEMPLATE_PREVIEW);
+            updatePreview();
+        } catch (CameraAccessException e) {
+            Log.e(LOG_TAG, e.getMessage());
+        }
+        try {
+            mediaRecorder.stop();
+            mediaRecorder.reset();
+            commitRecordingDestination();
+        } catch (RuntimeException e) {
+            // thrown when stopped right after the start, the file has no frames
+            Log.e(LOG_TAG, e.getMessage());
+            mediaRecorder.reset();
+            abortRecordingDestination();
+        }
+        recordingVideo = false;
+        cameraCallback.onRecordingStopped();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // ready for the next recording, the surface stays in the session
+            prepareRecorder();
+        }
     }
 
     @Override
-    public void takePicture() {
-        imageReader = ImageReader.newInstance(imageSize.getWidth(), imageSize.getHeight(), ImageFormat.JPEG, 1);
-        imageReader.setOnImageAvailableListener(mImageAvailableListener, backgroundHandler);
+    void captureStill() {
+        if (null == cameraDevice) {
+            return;
+        }
+        captureRotation = getJpegRotation();
+        if (recordingVideo && previewSession != null && imageReader != null) {
+            takeVideoSnapshot();
+            return;
+        }
+        if (zeroShutterLagEnabled && previewSession != null && imageReader != null) {
+            takeZeroShutterLagPicture();
+            return;
+        }
+
+        setUpImageReader(imageSize, STILL_MAX_IMAGES, 0);
+        createStillCaptureSession(new StillCaptureSessionCallback() {
+            @Override
+            void onStillCaptureSessionConfigured(CameraCaptureSession session) throws CameraAccessException {
+                session.capture(createStillCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE), stillCaptureCallback,
+                        cameraThread.getHandler());
+            }
+        });
+    }
+
+    @Override
+    public void takeBurst(final int count, final long intervalMillis) {
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                captureBurst(count, intervalMillis);
+            }
+        });
+    }
 
+    private void captureBurst(final int count, final long intervalMillis) {
+        if (null == cameraDevice || count <= 0) {
+            return;
+        }
+        captureRotation = getJpegRotation();
+        startBurstPipeline(count);
+
+        if (recordingVideo && previewSession != null && imageReader != null) {
+            submitBurst(previewSession, CameraDevice.TEMPLATE_VIDEO_SNAPSHOT, count, intervalMillis);
+            return;
+        }
+        if (zeroShutterLagEnabled && previewSession != null && imageReader != null) {
+            submitBurst(previewSession, CameraDevice.TEMPLATE_STILL_CAPTURE, count, intervalMillis);
+            return;
+        }
+
+        setUpImageReader(imageSize, BURST_MAX_IMAGES, 0);
+        createStillCaptureSession(new StillCaptureSessionCallback() {
+            @Override
+            void onStillCaptureSessionConfigured(CameraCaptureSession session) throws CameraAccessException {
+                submitBurst(session, CameraDevice.TEMPLATE_STILL_CAPTURE, count, intervalMillis);
+            }
+        });
+    }
+
+    private void submitBurst(final CameraCaptureSession session, int template, int count, long intervalMillis) {
         try {
-            final int sensorOrientation = cameraManager.getCameraCharacteristics(cameraIdString).get(
-                    CameraCharacteristics.SENSOR_ORIENTATION);
-            cameraDevice.createCaptureSession(Collections.singletonList(imageReader.getSurface()),
-                new CameraCaptureSession.StateCallback() {
+            final CaptureRequest request = createStillCaptureRequest(template);
+            if (intervalMillis <= 0) {
+                session.captureBurst(Collections.nCopies(count, request), null, cameraThread.getHandler());
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                cameraThread.postDelayed(new Runnable() {
                     @Override
-                    public void onConfigured(@NonNull CameraCaptureSession session) {
+                    public void run() {
+                        if (!isBurstActive()) {
+                            return;
+                        }
                         try {
-                        CaptureRequest.Builder captureRequestBuilder = cameraDevice.createCaptureRequest(
-                                CameraDevice.TEMPLATE_STILL_CAPTURE);
-                        captureRequestBuilder.addTarget(imageReader.getSurface());
-                        captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                                CaptureRequest.CONTROL_AE_MODE_ON);
-                        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                                cameraAutoFocusMode);
-                        captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
-                                cameraFlashMode);
-                        captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION,
-                                (sensorOrientation + getLayoutDirection() * (frontFacingCameraActive ? 1 : -1) +
-                                        360) % 360);
-
-                        session.stopRepeating();
-                        session.capture(captureRequestBuilder.build(),
-                            new CameraCaptureSession.CaptureCallback() {
-                                @Override
-                                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                                               @NonNull CaptureRequest request,
-                                                               @NonNull TotalCaptureResult result) {
-                                    super.onCaptureCompleted(session, request, result);
-                                }
-                            }, null);
-                        } catch (CameraAccessException e) {
-                            e.printStackTrace();
+                            session.capture(request, null, cameraThread.getHandler());
+                        } catch (CameraAccessException | IllegalStateException e) {
+                            Log.e(LOG_TAG, e.getMessage());
+                            cancelBurst();
                         }
                     }
+                }, i * intervalMillis);
+            }
+        } catch (CameraAccessException e) {
+            Log.e(LOG_TAG, e.getMessage());
+            cancelBurst();
+        }
+    }
 
-                    @Override
-                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                        // failed
-                    }
-                }, backgroundHandler);
+    private void createStillCaptureSession(StillCaptureSessionCallback callback) {
+        // the still session replaces the preview session. After a burst it is brought back once the
+        // burst is done, after a single picture startPreview() brings it back.
+        closePreviewSession();
+        try {
+            cameraDevice.createCaptureSession(Collections.singletonList(imageReader.getSurface()),
+                    callback, cameraThread.getHandler());
+        } catch (CameraAccessException e) {
+            Log.e(LOG_TAG, e.getMessage());
+        }
+    }
+
+    private void takeZeroShutterLagPicture() {
+        long tapTimestamp = realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime();
+        Image image = imageRing != null ? imageRing.takeNearest(tapTimestamp) : null;
+        if (image != null) {
+            deliverImage(image);
+            return;
+        }
+
+        try {
+            previewSession.capture(createStillCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE),
+                    zeroShutterLagCaptureCallback, cameraThread.getHandler());
         } catch (CameraAccessException e) {
-            e.printStackTrace();
+            Log.e(LOG_TAG, e.getMessage());
+        }
+    }
+
+    private void takeVideoSnapshot() {
+        // a single capture next to the repeating request, the recorder keeps getting its frames
+        try {
+            previewSession.capture(createStillCaptureRequest(CameraDevice.TEMPLATE_VIDEO_SNAPSHOT),
+                    stillCaptureCallback, cameraThread.getHandler());
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(LOG_TAG, e.getMessage());
+        }
+    }
+
+    private CaptureRequest createStillCaptureRequest(int template) throws CameraAccessException {
+        CaptureRequest.Builder captureRequestBuilder = cameraDevice.createCaptureRequest(template);
+        captureRequestBuilder.addTarget(imageReader.getSurface());
+        captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                CaptureRequest.CONTROL_AE_MODE_ON);
+        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                cameraAutoFocusMode);
+        captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
+                cameraFlashMode);
+        Rect cropRegion = repeatingRequest.get(CaptureRequest.SCALER_CROP_REGION);
+        if (cropRegion != null) {
+            captureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, cropRegion);
         }
+        captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, getJpegRotationHint());
+        return captureRequestBuilder.build();
     }
 
     @Override
     public void changeAspectRatio(int position) {
-        if(!ratioSizeList.isEmpty()) {
-            ASPECT_RATIO = ratioSizeList.get(position).getRatio();
+        applyAspectRatio(position);
+    }
+
+    @Override
+    void applyZoom(float zoom) {
+        CameraCapabilities capabilities = activeCapabilities;
+        if (capabilities == null || capabilities.activeArray.length < 4) {
+            return;
         }
+        int width = capabilities.activeArray[2] - capabilities.activeArray[0];
+        int height = capabilities.activeArray[3] - capabilities.activeArray[1];
+        int cropWidth = Math.round(width / zoom);
+        int cropHeight = Math.round(height / zoom);
+        int left = (width - cropWidth) / 2;
+        int top = (height - cropHeight) / 2;
+        // rate limited by the controller to one request per frame
+        repeatingRequest.set(CaptureRequest.SCALER_CROP_REGION, new Rect(left, top, left + cropWidth, top + cropHeight));
     }
 
     @Override
-    public void collectRatioSizes() {
-        ratioSizeList.clear();
-        CameraCharacteristics characteristics;
-        StreamConfigurationMap map = null;
-        try {
-            characteristics = ((CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE)).getCameraCharacteristics(Integer.toString(Integer.parseInt(getCameraId())));
-            map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
+    public void focusAt(float x, float y) {
+        CameraCapabilities capabilities = activeCapabilities;
+        if (capabilities == null || capabilities.activeArray.length < 4 || getWidth() == 0 || getHeight() == 0) {
+            return;
         }
+        Rect cropRegion = repeatingRequest.get(CaptureRequest.SCALER_CROP_REGION);
+        if (cropRegion == null) {
+            cropRegion = new Rect(0, 0, capabilities.activeArray[2] - capabilities.activeArray[0],
+                    capabilities.activeArray[3] - capabilities.activeArray[1]);
+        }
+        float[] point = mapViewPointToSensor(x / getWidth(), y / getHeight(), capabilities.sensorOrientation,
+                capabilities.frontFacing);
+        int halfSize = Math.round(Math.min(cropRegion.width(), cropRegion.height()) * FOCUS_AREA_SIZE / 2);
+        int centerX = cropRegion.left + Math.round(point[0] * cropRegion.width());
+        int centerY = cropRegion.top + Math.round(point[1] * cropRegion.height());
+        Rect region = new Rect(Math.max(cropRegion.left, centerX - halfSize),
+                Math.max(cropRegion.top, centerY - halfSize),
+                Math.min(cropRegion.right, centerX + halfSize),
+                Math.min(cropRegion.bottom, centerY + halfSize));
+        MeteringRectangle[] regions = {new MeteringRectangle(region, MeteringRectangle.METERING_WEIGHT_MAX)};
+
+        if (capabilities.maxMeteringRegions > 0) {
+            repeatingRequest.set(CaptureRequest.CONTROL_AE_REGIONS, regions);
+        }
+        if (capabilities.maxFocusRegions > 0
+                && capabilities.isAutoFocusModeSupported(CameraMetadata.CONTROL_AF_MODE_AUTO)) {
+            repeatingRequest.set(CaptureRequest.CONTROL_AF_REGIONS, regions);
+            repeatingRequest.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_AUTO);
+            repeatingRequest.trigger(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START,
+                    CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+        }
+    }
 
-        Size[] outputSizes = map.getOutputSizes(SurfaceTexture.class);
-        if (outputSizes != null) {
-            List<Double> ratioList = new ArrayList<>();
-            for (Size size : outputSizes) {
-                double ratio = (double) size.getWidth() / (double) size.getHeight();
-                if (!ratioList.contains(ratio)) {
-                    ratioList.add(ratio);
-                    ratioSizeList.add(new AspectRatio(ratio, size.getWidth(), size.getHeight()));
-                }
+    @Override
+    public void collectRatioSizes() {
+        try {
+            CameraCapabilities capabilities = loadCapabilities();
+            if (capabilities != null) {
+                setRatioSizes(capabilities.aspectRatios);
+            } else {
+                setRatioSizes(Collections.<AspectRatio>emptyList());
             }
+        } catch (CameraAccessException e) {
+            Log.e(LOG_TAG, e.getMessage());
         }
     }
 
@@ -455,40 +949,272 @@ public class Camera2View extends BaseCameraView {
         this.cameraFlashMode = cameraFlashMode;
     }
 
+    /**
+     * Number of repeating requests submitted to the capture session.
+     */
+    public long getSubmittedRequestCount() {
+        return repeatingRequest.getSubmittedCount();
+    }
+
+    /**
+     * Number of setting changes that were batched into another repeating request or skipped
+     * because nothing changed.
+     */
+    public long getCoalescedRequestCount() {
+        return repeatingRequest.getCoalescedCount();
+    }
+
+    public boolean isFastRecordStartEnabled() {
+        return fastRecordStartEnabled;
+    }
+
+    /**
+     * Prepares the recorder ahead of time on a persistent input surface kept in the preview
+     * session, so starting and stopping a recording only swap the repeating request. Needs API 23,
+     * below that the session is still reconfigured. Not used while frame analyzers are added, and
+     * the zero-shutter-lag ring is turned off meanwhile. Takes effect on the next preview session.
+     */
+    public void setFastRecordStartEnabled(boolean fastRecordStartEnabled) {
+        this.fastRecordStartEnabled = fastRecordStartEnabled;
+    }
+
+    public boolean isZeroShutterLagEnabled() {
+        return zeroShutterLagEnabled;
+    }
+
+    /**
+     * Keeps the still capture surface in the preview session, so {@link #takePicture()} only
+     * submits a capture request instead of reconfiguring the camera. Takes effect on the next
+     * preview session.
+     */
+    public void setZeroShutterLagEnabled(boolean zeroShutterLagEnabled) {
+        this.zeroShutterLagEnabled = zeroShutterLagEnabled;
+    }
+
+    public int getZeroShutterLagRingSize() {
+        return zeroShutterLagRingSize;
+    }
+
+    /**
+     * Number of recent frames kept while zero-shutter-lag is enabled. The picture is taken from
+     * the frame nearest to the tap. Zero disables the ring and every shot triggers a capture.
+     */
+    public void setZeroShutterLagRingSize(int zeroShutterLagRingSize) {
+        this.zeroShutterLagRingSize = Math.max(0, zeroShutterLagRingSize);
+    }
+
+    @Override
+    void onBurstFinished() {
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                if (stateMachine.getState() == CameraState.STREAMING && null == previewSession) {
+                    // the still capture session of the burst replaced the preview session
+                    stateMachine.requestReconfigure();
+                }
+            }
+        });
+    }
+
+    @Override
+    void onBurstReady() {
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                offerWaitingBurstImages();
+            }
+        });
+    }
+
+    private void offerWaitingBurstImages() {
+        ImageReader reader = imageReader;
+        while (reader != null && isBurstReady()) {
+            Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                // the reader was closed meanwhile
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+            offerBurstImage(image);
+        }
+    }
+
+    private void offerBurstImage(Image image) {
+        // burst frames may queue up longer than the reader can spare its images
+        final ByteBuffer imageData = bufferPool.copyOf(image.getPlanes()[0].getBuffer());
+        int width = image.getWidth();
+        int height = image.getHeight();
+        image.close();
+
+        offerBurstFrame(imageData, ImageFormat.JPEG, width, height, new Runnable() {
+            @Override
+            public void run() {
+                bufferPool.release(imageData);
+            }
+        });
+    }
+
+    private void deliverImage(final Image image) {
+        synchronized (retiredImageReaders) {
+            pendingImageWrites++;
+        }
+        // the plane is written straight from the reader's buffer, the image is closed afterwards
+        cameraCallback.onPictureTaken(image.getPlanes()[0].getBuffer(), new Runnable() {
+            @Override
+            public void run() {
+                image.close();
+                synchronized (retiredImageReaders) {
+                    pendingImageWrites--;
+                    if (pendingImageWrites == 0) {
+                        for (ImageReader reader : retiredImageReaders) {
+                            reader.close();
+                        }
+                        retiredImageReaders.clear();
+                    }
+                }
+            }
+        });
+    }
+
+    private final CameraCaptureSession.CaptureCallback stillCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            cameraCallback.onCaptureCompleted();
+        }
+    };
+
+    /**
+     * The still shares the reader with the frames of the ring, its image is told apart by the
+     * timestamp of the capture.
+     */
+    private final CameraCaptureSession.CaptureCallback zeroShutterLagCaptureCallback =
+            new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            // the image may have arrived first and gone into the ring
+            Image image = imageRing != null ? imageRing.take(timestamp) : null;
+            if (image != null) {
+                deliverImage(image);
+            } else if (imageRing != null) {
+                stillTimestamps.add(timestamp);
+            }
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            cameraCallback.onCaptureCompleted();
+        }
+    };
+
     private final ImageReader.OnImageAvailableListener mImageAvailableListener = new ImageReader.OnImageAvailableListener() {
         @Override
         public void onImageAvailable(ImageReader reader) {
+            if (isBurstActive()) {
+                if (isBurstReady()) {
+                    Image image = reader.acquireNextImage();
+                    if (image != null) {
+                        offerBurstImage(image);
+                    }
+                }
+                // otherwise the image waits in the reader, which holds the camera back once full
+                return;
+            }
+
+            if (imageRing != null) {
+                Image image = reader.acquireNextImage();
+                if (image == null) {
+                    return;
+                }
+                if (stillTimestamps.remove(image.getTimestamp())) {
+                    deliverImage(image);
+                } else {
+                    imageRing.add(image);
+                }
+                return;
+            }
+
             Image image = reader.acquireLatestImage();
-            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-            byte[] imageData = new byte[buffer.remaining()];
-            buffer.get(imageData);
+            if (image != null) {
+                deliverImage(image);
+            }
+        }
+    };
 
-            saveImage(imageData);
-            image.close();
+    private final ImageReader.OnImageAvailableListener analysisImageAvailableListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            try {
+                if (frameAnalysisDispatcher.hasAnalyzers()) {
+                    Frame frame = frameAnalysisDispatcher.obtainFrame(ImageFormat.NV21, image.getWidth(),
+                            image.getHeight(), YuvConverter.getNv21Length(image.getWidth(), image.getHeight()),
+                            image.getTimestamp());
+                    YuvConverter.toNv21(image, frame.data);
+                    frameAnalysisDispatcher.dispatch(frame);
+                }
+            } finally {
+                image.close();
+            }
         }
     };
 
+    private abstract class StillCaptureSessionCallback extends CameraCaptureSession.StateCallback {
+
+        abstract void onStillCaptureSessionConfigured(CameraCaptureSession session) throws CameraAccessException;
+
+        @Override
+        public void onConfigured(@NonNull CameraCaptureSession session) {
+            try {
+                session.stopRepeating();
+                onStillCaptureSessionConfigured(session);
+            } catch (CameraAccessException e) {
+                Log.e(LOG_TAG, e.getMessage());
+            }
+        }
+
+        @Override
+        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+            // failed
+        }
+    }
+
     private class StateCallback extends CameraDevice.StateCallback {
 
         @Override
         public void onOpened(@NonNull CameraDevice camera) {
+            if (stateMachine.getState() != CameraState.OPENING) {
+                // the open failed or was given up on in the meantime
+                camera.close();
+                return;
+            }
             cameraDevice = camera;
-            startPreviewSession();
-            cameraOpenCloseLock.release();
+            cameraCallback.onOpened();
+            prewarmOppositeCamera();
         }
 
         @Override
         public void onDisconnected(@NonNull CameraDevice camera) {
-            cameraOpenCloseLock.release();
             camera.close();
             cameraDevice = null;
+            cameraCallback.onError();
         }
 
         @Override
         public void onError(@NonNull CameraDevice camera, int error) {
-            cameraOpenCloseLock.release();
+            Log.e(LOG_TAG, "Camera error " + error);
             camera.close();
             cameraDevice = null;
+            cameraCallback.onError();
         }
     }
 }
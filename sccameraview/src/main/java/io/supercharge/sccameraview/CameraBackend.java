@@ -0,0 +1,71 @@
+package io.supercharge.sccameraview;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * The camera hardware as the capture path sees it: opening the selected camera, configuring its
+ * streams, taking pictures, recording and closing it. Every call is made on the executor of the
+ * backend, its camera thread, and answers through the {@link Callback}. The views implement it on
+ * top of their camera API, kept free of Android classes so the same path runs against a scripted
+ * backend in plain JVM tests.
+ */
+interface CameraBackend {
+
+    interface Callback {
+        void onOpened();
+
+        void onConfigured();
+
+        void onClosed();
+
+        void onError();
+
+        /**
+         * A preview frame. The data is only valid during the call and null for frames that only go
+         * to the preview texture.
+         */
+        void onPreviewFrame(byte[] data, int width, int height, long timestampNanos);
+
+        /**
+         * The camera captured the picture, its JPEG follows with {@link #onPictureTaken}.
+         */
+        void onCaptureCompleted();
+
+        /**
+         * The release callback, if any, is run once the JPEG is not needed anymore.
+         */
+        void onPictureTaken(ByteBuffer jpeg, Runnable releaseCallback);
+
+        void onRecordingStarted();
+
+        void onRecordingStopped();
+    }
+
+    /**
+     * The camera thread, every call is made and every callback arrives on it.
+     */
+    Executor getExecutor();
+
+    /**
+     * Opens the camera the backend has selected, e.g. the one facing the way the view asks for.
+     */
+    void open(Callback callback);
+
+    /**
+     * Sets up the streams of the open camera and starts the preview. Also called to reconfigure a
+     * running preview.
+     */
+    void configure();
+
+    /**
+     * Takes a picture of the streaming camera. While recording a video snapshot is taken instead.
+     */
+    void takePicture();
+
+    void startRecording();
+
+    void stopRecording();
+
+    void close();
+}
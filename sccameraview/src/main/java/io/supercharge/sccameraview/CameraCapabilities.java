@@ -0,0 +1,85 @@
+package io.supercharge.sccameraview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable description of one camera, collected once and kept in the {@link CameraCapabilityCache}.
+ * The aspect ratios come from the preview sizes, the picture and video ratios from the size tables
+ * of the still and the recorder outputs.
+ * Camera1 fills the focus and flash mode names, Camera2 the auto focus mode constants, the
+ * flash availability, the active pixel array as left, top, right and bottom and the frame rate
+ * ranges of auto exposure as lower and upper bound.
+ */
+class CameraCapabilities {
+
+    final String cameraId;
+    final boolean frontFacing;
+    final List<AspectRatio> aspectRatios;
+    final List<AspectRatio> pictureRatios;
+    final List<AspectRatio> videoRatios;
+    final int sensorOrientation;
+    final List<String> focusModes;
+    final List<String> flashModes;
+    final int[] autoFocusModes;
+    final boolean flashAvailable;
+    final boolean realtimeTimestamps;
+    final float maxZoom;
+    final int[] activeArray;
+    final int maxFocusRegions;
+    final int maxMeteringRegions;
+    final int[][] fpsRanges;
+
+    CameraCapabilities(String cameraId, boolean frontFacing, List<AspectRatio> aspectRatios,
+                       List<AspectRatio> pictureRatios, List<AspectRatio> videoRatios, int sensorOrientation,
+                       List<String> focusModes, List<String> flashModes, int[] autoFocusModes,
+                       boolean flashAvailable, boolean realtimeTimestamps, float maxZoom, int[] activeArray,
+                       int maxFocusRegions, int maxMeteringRegions, int[][] fpsRanges) {
+        this.cameraId = cameraId;
+        this.frontFacing = frontFacing;
+        this.aspectRatios = Collections.unmodifiableList(sortByRatio(aspectRatios));
+        this.pictureRatios = Collections.unmodifiableList(sortByRatio(pictureRatios));
+        this.videoRatios = Collections.unmodifiableList(sortByRatio(videoRatios));
+        this.sensorOrientation = sensorOrientation;
+        this.focusModes = focusModes != null ? focusModes : Collections.<String>emptyList();
+        this.flashModes = flashModes != null ? flashModes : Collections.<String>emptyList();
+        this.autoFocusModes = autoFocusModes != null ? autoFocusModes : new int[0];
+        this.flashAvailable = flashAvailable;
+        this.realtimeTimestamps = realtimeTimestamps;
+        this.maxZoom = Math.max(1f, maxZoom);
+        this.activeArray = activeArray != null ? activeArray : new int[0];
+        this.maxFocusRegions = maxFocusRegions;
+        this.maxMeteringRegions = maxMeteringRegions;
+        this.fpsRanges = fpsRanges != null ? fpsRanges : new int[0][];
+    }
+
+    CameraCapabilities rebucket(double ratioTolerance) {
+        return new CameraCapabilities(cameraId, frontFacing, AspectRatio.rebucket(aspectRatios, ratioTolerance),
+                AspectRatio.rebucket(pictureRatios, ratioTolerance), AspectRatio.rebucket(videoRatios, ratioTolerance),
+                sensorOrientation, focusModes, flashModes, autoFocusModes, flashAvailable, realtimeTimestamps,
+                maxZoom, activeArray, maxFocusRegions, maxMeteringRegions, fpsRanges);
+    }
+
+    boolean isAutoFocusModeSupported(int autoFocusMode) {
+        for (int mode : autoFocusModes) {
+            if (mode == autoFocusMode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<AspectRatio> sortByRatio(List<AspectRatio> aspectRatios) {
+        List<AspectRatio> sorted = new ArrayList<>(aspectRatios);
+        Collections.sort(sorted, new Comparator<AspectRatio>() {
+            @Override
+            public int compare(AspectRatio p1, AspectRatio p2) {
+                return RatioTable.compare(p1.getNumerator(), p1.getDenominator(), p2.getNumerator(),
+                        p2.getDenominator());
+            }
+        });
+        return sorted;
+    }
+}
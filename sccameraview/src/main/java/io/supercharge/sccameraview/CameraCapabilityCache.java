@@ -0,0 +1,76 @@
+package io.supercharge.sccameraview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of {@link CameraCapabilities}, keyed by camera ID and by facing. Cameras do
+ * not change while the process lives, so every camera has to be enumerated only once, no matter
+ * how often the views switch between them or get recreated.
+ */
+final class CameraCapabilityCache {
+
+    static final double DEFAULT_RATIO_TOLERANCE = 0.015;
+
+    private static final CameraCapabilityCache INSTANCE = new CameraCapabilityCache();
+
+    private final ConcurrentHashMap<String, CameraCapabilities> capabilitiesById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Boolean, CameraCapabilities> capabilitiesByFacing = new ConcurrentHashMap<>();
+    private volatile double ratioTolerance = DEFAULT_RATIO_TOLERANCE;
+
+    private CameraCapabilityCache() {
+    }
+
+    static CameraCapabilityCache getInstance() {
+        return INSTANCE;
+    }
+
+    CameraCapabilities get(String cameraId) {
+        return capabilitiesById.get(cameraId);
+    }
+
+    CameraCapabilities get(boolean frontFacing) {
+        return capabilitiesByFacing.get(frontFacing);
+    }
+
+    List<CameraCapabilities> getAll() {
+        return new ArrayList<>(capabilitiesById.values());
+    }
+
+    /**
+     * Stores the capabilities. The first camera put for a facing stays the default camera of that facing.
+     */
+    void put(CameraCapabilities capabilities) {
+        capabilitiesById.put(capabilities.cameraId, capabilities);
+        capabilitiesByFacing.putIfAbsent(capabilities.frontFacing, capabilities);
+    }
+
+    /**
+     * Relative tolerance the aspect ratios of the cached cameras are bucketed with.
+     */
+    double getRatioTolerance() {
+        return ratioTolerance;
+    }
+
+    /**
+     * Buckets the aspect ratios of the cached cameras again, every bucket keeps all of its sizes so
+     * the cameras do not have to be enumerated again.
+     */
+    synchronized void setRatioTolerance(double ratioTolerance) {
+        if (this.ratioTolerance == ratioTolerance) {
+            return;
+        }
+        this.ratioTolerance = ratioTolerance;
+        for (CameraCapabilities capabilities : getAll()) {
+            CameraCapabilities rebucketed = capabilities.rebucket(ratioTolerance);
+            capabilitiesById.put(rebucketed.cameraId, rebucketed);
+            capabilitiesByFacing.replace(rebucketed.frontFacing, capabilities, rebucketed);
+        }
+    }
+
+    void clear() {
+        capabilitiesById.clear();
+        capabilitiesByFacing.clear();
+    }
+}
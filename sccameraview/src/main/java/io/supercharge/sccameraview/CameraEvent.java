@@ -0,0 +1,29 @@
+package io.supercharge.sccameraview;
+
+public class CameraEvent {
+
+    private final CameraStage stage;
+    private final long timestampNanos;
+    private final long durationNanos;
+
+    CameraEvent(CameraStage stage, long timestampNanos, long durationNanos) {
+        this.stage = stage;
+        this.timestampNanos = timestampNanos;
+        this.durationNanos = durationNanos;
+    }
+
+    public CameraStage getStage() {
+        return stage;
+    }
+
+    /**
+     * Time of the event on the {@link System#nanoTime()} clock.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+}
@@ -0,0 +1,34 @@
+package io.supercharge.sccameraview;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects the durations of every {@link CameraStage} into a {@link LatencyHistogram}, e.g. to
+ * report p50 and p99 per stage to telemetry.
+ */
+public class CameraMetricsAggregator implements CameraMetricsListener {
+
+    private final Map<CameraStage, LatencyHistogram> histograms = new EnumMap<>(CameraStage.class);
+
+    public CameraMetricsAggregator() {
+        for (CameraStage stage : CameraStage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void onCameraEvent(CameraEvent event) {
+        histograms.get(event.getStage()).record(event.getDurationNanos());
+    }
+
+    public LatencyHistogram getHistogram(CameraStage stage) {
+        return histograms.get(stage);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
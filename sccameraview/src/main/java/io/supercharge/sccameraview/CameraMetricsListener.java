@@ -0,0 +1,10 @@
+package io.supercharge.sccameraview;
+
+
+public interface CameraMetricsListener {
+    /**
+     * Called on the thread the event happened on, the camera thread in most cases. Should return
+     * quickly.
+     */
+    void onCameraEvent(CameraEvent event);
+}
@@ -0,0 +1,38 @@
+package io.supercharge.sccameraview;
+
+/**
+ * The stages reported to a {@link CameraMetricsListener}. The duration of a {@link CameraEvent}
+ * is measured from the start noted for each stage.
+ */
+public enum CameraStage {
+    /**
+     * The camera device is open, measured from the start of opening it.
+     */
+    CAMERA_OPENED,
+    /**
+     * The preview session is configured, measured from the start of configuring it.
+     */
+    SESSION_CONFIGURED,
+    /**
+     * The first preview frame reached the view, measured from the start of configuring the session.
+     */
+    FIRST_PREVIEW_FRAME,
+    /**
+     * The still capture is completed, or the shutter fired on Camera1, measured from takePicture().
+     */
+    CAPTURE_COMPLETED,
+    /**
+     * The image data of the picture is available, measured from takePicture(), or from
+     * takeBurst() for every frame of a burst.
+     */
+    IMAGE_AVAILABLE,
+    /**
+     * The picture is written to its file, measured from takePicture(), or from takeBurst() for
+     * every frame of a burst.
+     */
+    FILE_WRITTEN,
+    /**
+     * The recorder is started and the camera feeds it, measured from startRecordingVideo().
+     */
+    RECORDING_STARTED
+}
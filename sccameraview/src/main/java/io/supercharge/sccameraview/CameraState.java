@@ -0,0 +1,10 @@
+package io.supercharge.sccameraview;
+
+public enum CameraState {
+    CLOSED,
+    OPENING,
+    OPEN,
+    CONFIGURING,
+    STREAMING,
+    CLOSING
+}
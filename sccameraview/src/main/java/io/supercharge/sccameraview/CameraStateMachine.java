@@ -0,0 +1,220 @@
+package io.supercharge.sccameraview;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the camera through {@link CameraState}s on a single executor, the camera thread. Callers
+ * only state where the camera should end up: open and streaming, closed, reopened or
+ * reconfigured. The machine walks there one transition at a time. Requests that arrive while a
+ * transition is in flight only update the target, so a burst of start/stop calls collapses into
+ * the transitions needed to reach the last target instead of running a full open/close cycle each.
+ *
+ * The operations are asynchronous. Each one reports its outcome with {@link #onOpened()},
+ * {@link #onConfigured()}, {@link #onClosed()} or {@link #onError()}, from any thread.
+ */
+class CameraStateMachine {
+
+    interface Operations {
+        void open();
+
+        void configure();
+
+        void close();
+    }
+
+    interface Listener {
+        void onStateChanged(CameraState state);
+    }
+
+    private final Executor executor;
+    private final Operations operations;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong transitionCount = new AtomicLong();
+    private volatile CameraState state = CameraState.CLOSED;
+    private Listener listener;
+
+    private boolean streamingRequested;
+    private boolean reopenRequested;
+    private boolean reconfigureRequested;
+    private boolean advanceScheduled;
+
+    private final Runnable advanceTask = new Runnable() {
+        @Override
+        public void run() {
+            advance();
+        }
+    };
+
+    CameraStateMachine(Executor executor, Operations operations) {
+        this.executor = executor;
+        this.operations = operations;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    CameraState getState() {
+        return state;
+    }
+
+    /**
+     * Number of open, close, reopen and reconfigure requests received.
+     */
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Number of transitions actually started. Stays below the request count when requests collapse.
+     */
+    long getTransitionCount() {
+        return transitionCount.get();
+    }
+
+    void requestOpen() {
+        synchronized (this) {
+            streamingRequested = true;
+        }
+        scheduleAdvance();
+    }
+
+    void requestClose() {
+        synchronized (this) {
+            streamingRequested = false;
+            reopenRequested = false;
+            reconfigureRequested = false;
+        }
+        scheduleAdvance();
+    }
+
+    /**
+     * Closes the open camera and opens it again, e.g. because the facing changed.
+     */
+    void requestReopen() {
+        synchronized (this) {
+            streamingRequested = true;
+            reopenRequested = true;
+        }
+        scheduleAdvance();
+    }
+
+    /**
+     * Configures the streams of the open camera again, or opens the camera if it is closed.
+     */
+    void requestReconfigure() {
+        synchronized (this) {
+            streamingRequested = true;
+            reconfigureRequested = true;
+        }
+        scheduleAdvance();
+    }
+
+    void onOpened() {
+        complete(CameraState.OPENING, CameraState.OPEN);
+    }
+
+    void onConfigured() {
+        complete(CameraState.CONFIGURING, CameraState.STREAMING);
+    }
+
+    void onClosed() {
+        complete(CameraState.CLOSING, CameraState.CLOSED);
+    }
+
+    void onError() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CameraStateMachine.this) {
+                    streamingRequested = false;
+                    reopenRequested = false;
+                    reconfigureRequested = false;
+                }
+                if (state != CameraState.CLOSED && state != CameraState.CLOSING) {
+                    startTransition(CameraState.CLOSING);
+                    operations.close();
+                }
+            }
+        });
+    }
+
+    private void complete(final CameraState expectedState, final CameraState newState) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (state != expectedState) {
+                    // the operation was overtaken, e.g. by an error
+                    return;
+                }
+                setState(newState);
+                advance();
+            }
+        });
+    }
+
+    private void scheduleAdvance() {
+        requestCount.incrementAndGet();
+        synchronized (this) {
+            if (advanceScheduled) {
+                return;
+            }
+            advanceScheduled = true;
+        }
+        executor.execute(advanceTask);
+    }
+
+    private void advance() {
+        boolean streaming;
+        boolean reopen;
+        boolean reconfigure;
+        synchronized (this) {
+            advanceScheduled = false;
+            streaming = streamingRequested;
+            reopen = reopenRequested;
+            reconfigure = reconfigureRequested;
+        }
+
+        switch (state) {
+            case CLOSED:
+                if (streaming) {
+                    synchronized (this) {
+                        reopenRequested = false;
+                        reconfigureRequested = false;
+                    }
+                    startTransition(CameraState.OPENING);
+                    operations.open();
+                }
+                break;
+            case OPEN:
+            case STREAMING:
+                if (!streaming || reopen) {
+                    startTransition(CameraState.CLOSING);
+                    operations.close();
+                } else if (state == CameraState.OPEN || reconfigure) {
+                    synchronized (this) {
+                        reconfigureRequested = false;
+                    }
+                    startTransition(CameraState.CONFIGURING);
+                    operations.configure();
+                }
+                break;
+            default:
+                // a transition is in flight, its completion advances again
+                break;
+        }
+    }
+
+    private void startTransition(CameraState newState) {
+        transitionCount.incrementAndGet();
+        setState(newState);
+    }
+
+    private void setState(CameraState newState) {
+        state = newState;
+        if (listener != null) {
+            listener.onStateChanged(newState);
+        }
+    }
+}
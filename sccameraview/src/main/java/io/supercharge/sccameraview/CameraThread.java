@@ -0,0 +1,156 @@
+package io.supercharge.sccameraview;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * The single background thread of a camera view. Preview, recording, capture and switch work all
+ * run here. The thread is started on first use and lives until the view is detached from its
+ * window, instead of being recreated on every preview start. Once quit, tasks are dropped until
+ * the view is attached again.
+ */
+public class CameraThread {
+
+    private static final AtomicInteger liveThreadCount = new AtomicInteger();
+    private static final AtomicInteger startedThreadCount = new AtomicInteger();
+
+    private final String name;
+    private final AtomicLong postedTaskCount = new AtomicLong();
+    private final AtomicLong totalQueueLatencyNanos = new AtomicLong();
+    private final AtomicLong maxQueueLatencyNanos = new AtomicLong();
+    private HandlerThread thread;
+    private Handler handler;
+    private boolean quit;
+
+    CameraThread(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Number of camera threads running in the process right now.
+     */
+    public static int getLiveThreadCount() {
+        return liveThreadCount.get();
+    }
+
+    /**
+     * Number of camera threads started since the process started.
+     */
+    public static int getStartedThreadCount() {
+        return startedThreadCount.get();
+    }
+
+    public long getPostedTaskCount() {
+        return postedTaskCount.get();
+    }
+
+    /**
+     * Average time tasks posted with {@link #post(Runnable)} waited before they started to run.
+     */
+    public long getAverageQueueLatencyNanos() {
+        long count = postedTaskCount.get();
+        return count == 0 ? 0 : totalQueueLatencyNanos.get() / count;
+    }
+
+    public long getMaxQueueLatencyNanos() {
+        return maxQueueLatencyNanos.get();
+    }
+
+    /**
+     * Null once the thread has quit.
+     */
+    synchronized Handler getHandler() {
+        if (quit) {
+            return null;
+        }
+        if (thread == null) {
+            thread = new HandlerThread(name);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+            liveThreadCount.incrementAndGet();
+            startedThreadCount.incrementAndGet();
+        }
+        return handler;
+    }
+
+    boolean isCurrentThread() {
+        Looper looper = Looper.myLooper();
+        synchronized (this) {
+            return thread != null && looper == thread.getLooper();
+        }
+    }
+
+    void post(Runnable task) {
+        postDelayed(task, 0);
+    }
+
+    void postDelayed(final Runnable task, long delayMillis) {
+        Handler handler = getHandler();
+        if (handler == null) {
+            Log.d(LOG_TAG, "The camera thread has quit, task dropped");
+            return;
+        }
+        final long dueTime = System.nanoTime() + delayMillis * 1000000L;
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                recordQueueLatency(System.nanoTime() - dueTime);
+                task.run();
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * Lets the thread start again on the next post after {@link #quit()}.
+     */
+    synchronized void resume() {
+        quit = false;
+    }
+
+    /**
+     * Runs the tasks already due, then stops the thread. Waits for it unless called on it, without
+     * holding the lock, so the tasks still running can post.
+     */
+    void quit() {
+        HandlerThread quittingThread;
+        synchronized (this) {
+            quit = true;
+            quittingThread = thread;
+            thread = null;
+            handler = null;
+        }
+        if (quittingThread == null) {
+            return;
+        }
+        liveThreadCount.decrementAndGet();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            quittingThread.quitSafely();
+        } else {
+            quittingThread.quit();
+        }
+        if (Looper.myLooper() != quittingThread.getLooper()) {
+            try {
+                quittingThread.join();
+            } catch (InterruptedException e) {
+                Log.e(LOG_TAG, e.getMessage());
+            }
+        }
+    }
+
+    private void recordQueueLatency(long latencyNanos) {
+        postedTaskCount.incrementAndGet();
+        totalQueueLatencyNanos.addAndGet(latencyNanos);
+        long max = maxQueueLatencyNanos.get();
+        while (latencyNanos > max && !maxQueueLatencyNanos.compareAndSet(max, latencyNanos)) {
+            max = maxQueueLatencyNanos.get();
+        }
+    }
+}
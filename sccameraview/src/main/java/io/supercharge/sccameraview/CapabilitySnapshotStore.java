@@ -0,0 +1,220 @@
+package io.supercharge.sccameraview;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Persists the {@link CameraCapabilityCache} in a small versioned binary file, so a cold start can
+ * fill the cache synchronously instead of enumerating the cameras. The snapshot is keyed by the
+ * device fingerprint and the OS build, and it is ignored as soon as either of them changes.
+ */
+final class CapabilitySnapshotStore {
+
+    private static final String FILE_NAME = "sccameraview_capabilities.bin";
+    private static final int SNAPSHOT_VERSION = 5;
+
+    private static boolean loaded;
+
+    private CapabilitySnapshotStore() {
+    }
+
+    /**
+     * Fills the cache from the snapshot once per process. Returns whether the snapshot was valid.
+     */
+    static synchronized boolean load(Context context) {
+        if (loaded) {
+            return true;
+        }
+        File file = getSnapshotFile(context);
+        if (!file.exists()) {
+            return false;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != SNAPSHOT_VERSION || !getSnapshotKey().equals(in.readUTF())) {
+                return false;
+            }
+            List<CameraCapabilities> snapshot = new ArrayList<>();
+            int cameraCount = in.readInt();
+            for (int i = 0; i < cameraCount; i++) {
+                snapshot.add(readCapabilities(in));
+            }
+
+            CameraCapabilityCache cache = CameraCapabilityCache.getInstance();
+            for (CameraCapabilities capabilities : snapshot) {
+                cache.put(capabilities);
+            }
+            loaded = true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Cannot read capability snapshot: " + e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+        return loaded;
+    }
+
+    static synchronized void save(Context context, List<CameraCapabilities> capabilitiesList) {
+        File file = getSnapshotFile(context);
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeUTF(getSnapshotKey());
+            out.writeInt(capabilitiesList.size());
+            for (CameraCapabilities capabilities : capabilitiesList) {
+                writeCapabilities(out, capabilities);
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Cannot replace capability snapshot");
+                return;
+            }
+            loaded = true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Cannot write capability snapshot: " + e.getMessage());
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static File getSnapshotFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static String getSnapshotKey() {
+        return Build.FINGERPRINT + "|" + Build.VERSION.SDK_INT + "|" + Build.VERSION.INCREMENTAL;
+    }
+
+    private static void writeCapabilities(DataOutputStream out, CameraCapabilities capabilities) throws IOException {
+        out.writeUTF(capabilities.cameraId);
+        out.writeBoolean(capabilities.frontFacing);
+        out.writeInt(capabilities.sensorOrientation);
+        writeSizes(out, capabilities.aspectRatios);
+        writeSizes(out, capabilities.pictureRatios);
+        writeSizes(out, capabilities.videoRatios);
+        writeStrings(out, capabilities.focusModes);
+        writeStrings(out, capabilities.flashModes);
+        out.writeInt(capabilities.autoFocusModes.length);
+        for (int autoFocusMode : capabilities.autoFocusModes) {
+            out.writeInt(autoFocusMode);
+        }
+        out.writeBoolean(capabilities.flashAvailable);
+        out.writeBoolean(capabilities.realtimeTimestamps);
+        out.writeFloat(capabilities.maxZoom);
+        out.writeInt(capabilities.activeArray.length);
+        for (int bound : capabilities.activeArray) {
+            out.writeInt(bound);
+        }
+        out.writeInt(capabilities.maxFocusRegions);
+        out.writeInt(capabilities.maxMeteringRegions);
+        out.writeInt(capabilities.fpsRanges.length);
+        for (int[] range : capabilities.fpsRanges) {
+            out.writeInt(range[0]);
+            out.writeInt(range[1]);
+        }
+    }
+
+    private static CameraCapabilities readCapabilities(DataInputStream in) throws IOException {
+        String cameraId = in.readUTF();
+        boolean frontFacing = in.readBoolean();
+        int sensorOrientation = in.readInt();
+        List<AspectRatio> aspectRatios = readSizes(in);
+        List<AspectRatio> pictureRatios = readSizes(in);
+        List<AspectRatio> videoRatios = readSizes(in);
+        List<String> focusModes = readStrings(in);
+        List<String> flashModes = readStrings(in);
+        int[] autoFocusModes = new int[in.readInt()];
+        for (int i = 0; i < autoFocusModes.length; i++) {
+            autoFocusModes[i] = in.readInt();
+        }
+        boolean flashAvailable = in.readBoolean();
+        boolean realtimeTimestamps = in.readBoolean();
+        float maxZoom = in.readFloat();
+        int[] activeArray = new int[in.readInt()];
+        for (int i = 0; i < activeArray.length; i++) {
+            activeArray[i] = in.readInt();
+        }
+        int maxFocusRegions = in.readInt();
+        int maxMeteringRegions = in.readInt();
+        int[][] fpsRanges = new int[in.readInt()][];
+        for (int i = 0; i < fpsRanges.length; i++) {
+            fpsRanges[i] = new int[]{in.readInt(), in.readInt()};
+        }
+
+        return new CameraCapabilities(cameraId, frontFacing, aspectRatios, pictureRatios, videoRatios,
+                sensorOrientation, focusModes, flashModes, autoFocusModes, flashAvailable, realtimeTimestamps, maxZoom, activeArray,
+                maxFocusRegions, maxMeteringRegions, fpsRanges);
+    }
+
+    private static void writeSizes(DataOutputStream out, List<AspectRatio> aspectRatios) throws IOException {
+        int sizeCount = 0;
+        for (AspectRatio aspectRatio : aspectRatios) {
+            sizeCount += aspectRatio.getSizeCount();
+        }
+        out.writeInt(sizeCount);
+        for (AspectRatio aspectRatio : aspectRatios) {
+            for (int i = 0; i < aspectRatio.getSizeCount(); i++) {
+                out.writeInt(aspectRatio.getWidth(i));
+                out.writeInt(aspectRatio.getHeight(i));
+            }
+        }
+    }
+
+    private static List<AspectRatio> readSizes(DataInputStream in) throws IOException {
+        int sizeCount = in.readInt();
+        int[] widths = new int[sizeCount];
+        int[] heights = new int[sizeCount];
+        for (int i = 0; i < sizeCount; i++) {
+            widths[i] = in.readInt();
+            heights[i] = in.readInt();
+        }
+        // bucketed again, the tolerance may have changed since the snapshot was taken
+        return AspectRatio.fromSizes(widths, heights, CameraCapabilityCache.getInstance().getRatioTolerance());
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.supercharge.sccameraview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * {@link MediaWriter} with its own thread pool. User initiated requests are written before any
+ * other queued request and are always accepted. Other requests, i.e. burst frames, are rejected
+ * once {@code queueDepth} writes are pending, and the burst counts them as dropped. The views
+ * keep its thread count at the number of burst frames written at the same time.
+ */
+public class DefaultMediaWriter implements MediaWriter {
+
+    public static final int DEFAULT_THREAD_COUNT = BaseCameraView.DEFAULT_BURST_WRITER_COUNT;
+    public static final int DEFAULT_QUEUE_DEPTH = 8;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final int queueDepth;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public DefaultMediaWriter() {
+        this(DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_DEPTH);
+    }
+
+    public DefaultMediaWriter(int threadCount, int queueDepth) {
+        this.queueDepth = queueDepth;
+        executor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new WriterThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void write(MediaWriteRequest request) {
+        if (!request.isUserInitiated() && pendingWrites.get() >= queueDepth) {
+            Log.d(LOG_TAG, "Media write queue is full, dropping request");
+            request.release();
+            if (request.getDestination() != null) {
+                request.getDestination().abort();
+            }
+            deliver(request, new ImageSaveResult(request.getFile(), 0, false));
+            return;
+        }
+        pendingWrites.incrementAndGet();
+        executor.execute(new WriteJob(request, sequence.getAndIncrement()));
+    }
+
+    public void setThreadCount(int threadCount) {
+        // the maximum may never be below the core size
+        if (threadCount > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threadCount);
+            executor.setCorePoolSize(threadCount);
+        } else {
+            executor.setCorePoolSize(threadCount);
+            executor.setMaximumPoolSize(threadCount);
+        }
+    }
+
+    public int getPendingWriteCount() {
+        return pendingWrites.get();
+    }
+
+    @SuppressWarnings("checkstyle:illegalcatch")
+    private ImageSaveResult writeToDestination(MediaWriteRequest request) {
+        MediaDestination destination = request.getDestination();
+        if (destination == null) {
+            Log.d(LOG_TAG, "Error creating media file, check storage permissions");
+            return new ImageSaveResult(null, 0, false);
+        }
+        if (request.getBuffer() == null) {
+            Log.d(LOG_TAG, "No image data");
+            destination.abort();
+            return new ImageSaveResult(destination.getFile(), 0, false);
+        }
+
+        long startTime = System.nanoTime();
+        boolean successful = false;
+        try {
+            // the buffer stays readable for the derived outputs
+            writeFully(request.getBuffer().duplicate(), destination);
+            successful = true;
+        } catch (FileNotFoundException e) {
+            Log.d(LOG_TAG, "File not found: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            // content providers report their failures as runtime exceptions
+            Log.d(LOG_TAG, "Error accessing file: " + e.getMessage());
+        }
+        long writeTimeNanos = System.nanoTime() - startTime;
+        if (!successful) {
+            destination.abort();
+        }
+        List<DerivedImage> derivedImages = DerivedOutputGenerator.generate(request.getBuffer(),
+                successful ? request.getOutputTarget() : null, request.getDerivedOutputs());
+        return new ImageSaveResult(destination.getFile(), destination.getUri(), writeTimeNanos, successful,
+                derivedImages);
+    }
+
+    /**
+     * Writes the buffer and commits the destination, the destination is left to the caller to
+     * abort if this fails.
+     */
+    static void writeFully(ByteBuffer buffer, MediaDestination destination) throws IOException {
+        OutputStream stream = destination.open();
+        // file channels write direct buffers without copying them to the heap first
+        WritableByteChannel channel = stream instanceof FileOutputStream
+                ? ((FileOutputStream) stream).getChannel() : Channels.newChannel(stream);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        destination.commit();
+    }
+
+    private void deliver(final MediaWriteRequest request, final ImageSaveResult result) {
+        final OnImageSavedListener listener = request.getListener();
+        if (listener == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onImageSaved();
+                if (listener instanceof OnImageResultListener) {
+                    ((OnImageResultListener) listener).onImageSaved(result);
+                }
+            }
+        });
+    }
+
+    private class WriteJob implements Runnable, Comparable<WriteJob> {
+
+        private final MediaWriteRequest request;
+        private final long sequenceNumber;
+
+        WriteJob(MediaWriteRequest request, long sequenceNumber) {
+            this.request = request;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public void run() {
+            ImageSaveResult result;
+            try {
+                result = writeToDestination(request);
+            } finally {
+                request.release();
+                pendingWrites.decrementAndGet();
+            }
+            deliver(request, result);
+        }
+
+        @Override
+        public int compareTo(WriteJob other) {
+            if (request.isUserInitiated() != other.request.isUserInitiated()) {
+                return request.isUserInitiated() ? -1 : 1;
+            }
+            if (sequenceNumber == other.sequenceNumber) {
+                return 0;
+            }
+            return sequenceNumber < other.sequenceNumber ? -1 : 1;
+        }
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "MediaWriter-" + threadCount.incrementAndGet());
+        }
+    }
+}
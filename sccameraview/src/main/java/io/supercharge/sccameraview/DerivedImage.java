@@ -0,0 +1,67 @@
+package io.supercharge.sccameraview;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.File;
+
+/**
+ * A generated {@link DerivedOutput}. Bitmaps are decoded as stored, the rotation to display them
+ * upright is given by {@link #getRotationDegrees()}. Written images carry it in their EXIF tag.
+ */
+public class DerivedImage {
+
+    private final DerivedOutput output;
+    private final Bitmap bitmap;
+    private final MediaDestination destination;
+    private final int width;
+    private final int height;
+    private final int rotationDegrees;
+
+    DerivedImage(DerivedOutput output, Bitmap bitmap, MediaDestination destination, int width, int height,
+                 int rotationDegrees) {
+        this.output = output;
+        this.bitmap = bitmap;
+        this.destination = destination;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+    }
+
+    public DerivedOutput getOutput() {
+        return output;
+    }
+
+    /**
+     * Null for written outputs.
+     */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Null for outputs kept as a bitmap, or written to a destination that is not a file.
+     */
+    public File getFile() {
+        return destination != null ? destination.getFile() : null;
+    }
+
+    /**
+     * Null for outputs kept as a bitmap, or written to a destination that is not a content Uri.
+     */
+    public Uri getUri() {
+        return destination != null ? destination.getUri() : null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+}
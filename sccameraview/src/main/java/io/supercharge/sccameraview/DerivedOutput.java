@@ -0,0 +1,64 @@
+package io.supercharge.sccameraview;
+
+/**
+ * A smaller variant of a saved picture, generated by the media writer from the JPEG still in
+ * memory and delivered with the {@link ImageSaveResult}, so the saved file is never read back.
+ */
+public final class DerivedOutput {
+
+    public static final int TYPE_EXIF_THUMBNAIL = 0;
+    public static final int TYPE_DOWNSCALED = 1;
+
+    static final int DEFAULT_THUMBNAIL_SIZE = 320;
+
+    private final int type;
+    private final int maxSize;
+    private final int jpegQuality;
+
+    private DerivedOutput(int type, int maxSize, int jpegQuality) {
+        this.type = type;
+        this.maxSize = maxSize;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * The thumbnail embedded by the camera as a bitmap. Pictures without one are downscaled to
+     * about {@value #DEFAULT_THUMBNAIL_SIZE} pixels instead.
+     */
+    public static DerivedOutput exifThumbnail() {
+        return new DerivedOutput(TYPE_EXIF_THUMBNAIL, DEFAULT_THUMBNAIL_SIZE, 0);
+    }
+
+    /**
+     * The picture decoded as a bitmap at a power of two scale, its longer side at least
+     * {@code maxSize} and less than twice that.
+     */
+    public static DerivedOutput downscaled(int maxSize) {
+        return new DerivedOutput(TYPE_DOWNSCALED, maxSize, 0);
+    }
+
+    /**
+     * Like {@link #downscaled(int)}, but encoded again and written to the output target of the
+     * picture, named like a picture with {@code _maxSize} appended, e.g. as the copy to upload.
+     * The bitmap is not kept.
+     */
+    public static DerivedOutput downscaledJpeg(int maxSize, int jpegQuality) {
+        return new DerivedOutput(TYPE_DOWNSCALED, maxSize, jpegQuality);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public boolean isWrittenToFile() {
+        return jpegQuality > 0;
+    }
+}
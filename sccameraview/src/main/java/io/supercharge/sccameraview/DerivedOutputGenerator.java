@@ -0,0 +1,169 @@
+package io.supercharge.sccameraview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Generates the {@link DerivedOutput}s of a picture from its JPEG in memory. The embedded
+ * thumbnail is decoded on its own, downscales are decoded at a power of two sample size so the
+ * full resolution bitmap is never allocated. The sizes come from the JPEG headers, nothing is
+ * decoded to measure the picture.
+ */
+final class DerivedOutputGenerator {
+
+    private DerivedOutputGenerator() {
+    }
+
+    /**
+     * The outputs that could be generated, the buffer is left untouched. Encoded outputs are
+     * written to the output target, they are skipped without one or if the picture was not saved.
+     */
+    @SuppressWarnings("checkstyle:illegalcatch")
+    static List<DerivedImage> generate(ByteBuffer jpeg, OutputTarget outputTarget, List<DerivedOutput> outputs) {
+        if (jpeg == null || outputs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int orientation = ExifOrientation.read(jpeg);
+        int[] dimensions = ExifOrientation.readDimensions(jpeg);
+        if (dimensions == null) {
+            dimensions = decodeDimensions(jpeg);
+        }
+        List<DerivedImage> images = new ArrayList<>(outputs.size());
+        for (DerivedOutput output : outputs) {
+            DerivedImage image = null;
+            try {
+                image = generate(jpeg, dimensions, orientation, outputTarget, output);
+            } catch (IOException | RuntimeException e) {
+                // content providers report their failures as runtime exceptions
+                Log.d(LOG_TAG, "Error writing derived image: " + e.getMessage());
+            }
+            if (image != null) {
+                images.add(image);
+            }
+        }
+        return images;
+    }
+
+    @SuppressWarnings("checkstyle:illegalcatch")
+    private static DerivedImage generate(ByteBuffer jpeg, int[] dimensions, int orientation,
+                                         OutputTarget outputTarget, DerivedOutput output) throws IOException {
+        int rotationDegrees = ExifOrientation.toDegrees(orientation);
+        if (output.getType() == DerivedOutput.TYPE_EXIF_THUMBNAIL) {
+            ByteBuffer thumbnail = ExifThumbnail.find(jpeg);
+            if (thumbnail != null) {
+                Bitmap bitmap = decode(thumbnail, null);
+                if (bitmap != null) {
+                    return new DerivedImage(output, bitmap, null, bitmap.getWidth(), bitmap.getHeight(),
+                            rotationDegrees);
+                }
+            }
+        }
+        if (output.isWrittenToFile() && outputTarget == null) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(dimensions, output.getMaxSize());
+        Bitmap bitmap = decode(jpeg, options);
+        if (bitmap == null) {
+            Log.d(LOG_TAG, "Cannot decode the picture for a derived image");
+            return null;
+        }
+        if (!output.isWrittenToFile()) {
+            return new DerivedImage(output, bitmap, null, bitmap.getWidth(), bitmap.getHeight(), rotationDegrees);
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, output.getJpegQuality(), encoded);
+        bitmap.recycle();
+        ByteBuffer derivedJpeg = ByteBuffer.wrap(encoded.toByteArray());
+        if (orientation > ExifOrientation.NORMAL) {
+            derivedJpeg = ExifOrientation.write(derivedJpeg, orientation);
+        }
+        MediaDestination destination = outputTarget.createDestination(OutputTarget.MEDIA_TYPE_IMAGE,
+                "_" + output.getMaxSize());
+        if (destination == null) {
+            return null;
+        }
+        try {
+            DefaultMediaWriter.writeFully(derivedJpeg, destination);
+        } catch (IOException | RuntimeException e) {
+            destination.abort();
+            throw e;
+        }
+        return new DerivedImage(output, null, destination, width, height, rotationDegrees);
+    }
+
+    /**
+     * The largest power of two keeping the longer side at least {@code maxSize}.
+     */
+    static int getSampleSize(int[] dimensions, int maxSize) {
+        if (dimensions == null || maxSize <= 0) {
+            return 1;
+        }
+        int longSide = Math.max(dimensions[0], dimensions[1]);
+        int sampleSize = 1;
+        while (longSide / (sampleSize * 2) >= maxSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int[] decodeDimensions(ByteBuffer jpeg) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(jpeg, options);
+        return options.outWidth > 0 ? new int[]{options.outWidth, options.outHeight} : null;
+    }
+
+    private static Bitmap decode(ByteBuffer jpeg, BitmapFactory.Options options) {
+        if (jpeg.hasArray()) {
+            return BitmapFactory.decodeByteArray(jpeg.array(), jpeg.arrayOffset() + jpeg.position(),
+                    jpeg.remaining(), options);
+        }
+        // direct buffers of the image reader are streamed, not copied
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(jpeg.duplicate()), null, options);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.supercharge.sccameraview;
+
+import android.content.Context;
+import android.view.OrientationEventListener;
+
+/**
+ * Tracks how the device is held, rounded to 0, 90, 180 or 270 degrees clockwise from its natural
+ * orientation. A new orientation is only taken once the device is turned well past the halfway
+ * point, so holding it near 45 degrees does not flip the pictures back and forth.
+ */
+class DeviceOrientationListener extends OrientationEventListener {
+
+    interface Callback {
+        void onDeviceOrientationChanged(int orientation);
+    }
+
+    // degrees past the halfway point between two orientations before switching
+    private static final int HYSTERESIS_DEGREES = 10;
+
+    private final Callback callback;
+    private volatile int orientation;
+
+    DeviceOrientationListener(Context context, Callback callback) {
+        super(context);
+        this.callback = callback;
+    }
+
+    int getOrientation() {
+        return orientation;
+    }
+
+    @Override
+    public void onOrientationChanged(int degrees) {
+        if (degrees == ORIENTATION_UNKNOWN) {
+            // lying flat, the last orientation stays
+            return;
+        }
+        int current = orientation;
+        int distance = Math.abs(degrees - current);
+        distance = Math.min(distance, 360 - distance);
+        if (distance < 45 + HYSTERESIS_DEGREES) {
+            return;
+        }
+        int rounded = (degrees + 45) / 90 * 90 % 360;
+        if (rounded != current) {
+            orientation = rounded;
+            callback.onDeviceOrientationChanged(rounded);
+        }
+    }
+}
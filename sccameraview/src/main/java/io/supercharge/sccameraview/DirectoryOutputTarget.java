@@ -0,0 +1,115 @@
+package io.supercharge.sccameraview;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Writes pictures and videos to files in two directories. The directories are only created when
+ * the first file cannot be opened, not checked on every capture.
+ *
+ * Files are written under a hidden pending name and renamed when they are committed, so they are
+ * named after the moment they were saved and a destination opened ahead of the shutter never shows
+ * up as an empty picture. Pending files left behind by a crash are removed once they are old.
+ */
+class DirectoryOutputTarget extends OutputTarget {
+
+    static final String PENDING_PREFIX = ".pending-";
+    private static final long STALE_PENDING_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final AtomicLong PENDING_SEQUENCE = new AtomicLong();
+
+    private final File pictureDirectory;
+    private final File videoDirectory;
+    private final AtomicBoolean staleFilesRemoved = new AtomicBoolean();
+
+    DirectoryOutputTarget(File pictureDirectory, File videoDirectory) {
+        this.pictureDirectory = pictureDirectory;
+        this.videoDirectory = videoDirectory;
+    }
+
+    @Override
+    public MediaDestination createDestination(int mediaType, String suffix) {
+        if (mediaType == MEDIA_TYPE_VIDEO) {
+            return new PendingFileDestination(videoDirectory, "VID_", suffix, ".mp4");
+        }
+        return new PendingFileDestination(pictureDirectory, "IMG_", suffix, ".jpg");
+    }
+
+    /**
+     * Called on the thread opening the first file, not when the target is created.
+     */
+    private void removeStalePendingFiles() {
+        if (!staleFilesRemoved.compareAndSet(false, true)) {
+            return;
+        }
+        final long staleBefore = System.currentTimeMillis() - STALE_PENDING_MILLIS;
+        FileFilter filter = new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().startsWith(PENDING_PREFIX) && file.lastModified() < staleBefore;
+            }
+        };
+        for (File directory : new File[]{pictureDirectory, videoDirectory}) {
+            File[] files = directory.listFiles(filter);
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.d(LOG_TAG, "Cannot delete the stale file " + file);
+                }
+            }
+        }
+    }
+
+    private class PendingFileDestination extends MediaDestination.FileDestination {
+
+        private final File directory;
+        private final String prefix;
+        private final String suffix;
+        private final String extension;
+        private volatile File committedFile;
+
+        PendingFileDestination(File directory, String prefix, String suffix, String extension) {
+            super(new File(directory, PENDING_PREFIX + PENDING_SEQUENCE.incrementAndGet() + "-"
+                    + System.nanoTime() + extension));
+            this.directory = directory;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.extension = extension;
+        }
+
+        /**
+         * The pending file until it is committed.
+         */
+        @Override
+        public File getFile() {
+            File file = committedFile;
+            return file != null ? file : super.getFile();
+        }
+
+        @Override
+        OutputStream openStream() throws IOException {
+            removeStalePendingFiles();
+            return super.openStream();
+        }
+
+        @Override
+        void onCommitted() throws IOException {
+            File pendingFile = super.getFile();
+            File file = MediaNameGenerator.nextFile(directory, prefix, suffix, extension);
+            if (!pendingFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + pendingFile + " to " + file);
+            }
+            committedFile = file;
+        }
+    }
+}
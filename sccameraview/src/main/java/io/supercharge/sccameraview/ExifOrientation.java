@@ -0,0 +1,333 @@
+package io.supercharge.sccameraview;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes the EXIF orientation tag of a JPEG without decoding it. Only the marker
+ * segments in front of the compressed data are walked. An existing tag is patched in place, a
+ * JPEG without one gets a minimal APP1 segment after the start of image marker, which copies the
+ * bytes but never touches the pixels.
+ */
+final class ExifOrientation {
+
+    static final int UNDEFINED = 0;
+    static final int NORMAL = 1;
+    static final int ROTATE_180 = 3;
+    static final int ROTATE_90 = 6;
+    static final int ROTATE_270 = 8;
+
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int SOI = 0xD8;
+    private static final int SOS = 0xDA;
+    private static final int EOI = 0xD9;
+    private static final int APP1 = 0xE1;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final int IFD_ENTRY_LENGTH = 12;
+    private static final int TIFF_MAGIC = 42;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private ExifOrientation() {
+    }
+
+    static int toDegrees(int orientation) {
+        switch (orientation) {
+            case ROTATE_90:
+                return 90;
+            case ROTATE_180:
+                return 180;
+            case ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    static int fromDegrees(int degrees) {
+        switch ((degrees % 360 + 360) % 360) {
+            case 90:
+                return ROTATE_90;
+            case 180:
+                return ROTATE_180;
+            case 270:
+                return ROTATE_270;
+            default:
+                return NORMAL;
+        }
+    }
+
+    /**
+     * The orientation tag of the JPEG, {@link #UNDEFINED} without one.
+     */
+    static int read(ByteBuffer jpeg) {
+        OrientationEntry entry = findOrientationEntry(jpeg);
+        if (entry == null) {
+            return UNDEFINED;
+        }
+        return readShort(jpeg, entry.offset + 8, entry.order);
+    }
+
+    /**
+     * Width and height from the start of frame segment, null if the JPEG has none.
+     */
+    static int[] readDimensions(ByteBuffer jpeg) {
+        int offset = jpeg.position() + 2;
+        while (offset + 4 <= jpeg.limit()) {
+            int marker = nextMarker(jpeg, offset);
+            if (marker < 0 || marker == SOS || marker == EOI) {
+                return null;
+            }
+            offset = skipFill(jpeg, offset);
+            if (isStartOfFrame(marker) && offset + 9 <= jpeg.limit()) {
+                int height = readShort(jpeg, offset + 5, ByteOrder.BIG_ENDIAN);
+                int width = readShort(jpeg, offset + 7, ByteOrder.BIG_ENDIAN);
+                return new int[]{width, height};
+            }
+            offset += 2 + readShort(jpeg, offset + 2, ByteOrder.BIG_ENDIAN);
+        }
+        return null;
+    }
+
+    /**
+     * Sets the orientation tag. Returns the same buffer patched in place if it has a writable tag,
+     * otherwise a copy with the tag, or the buffer itself if it is not a JPEG.
+     */
+    static ByteBuffer write(ByteBuffer jpeg, int orientation) {
+        if (!isJpeg(jpeg)) {
+            return jpeg;
+        }
+        OrientationEntry entry = findOrientationEntry(jpeg);
+        if (entry == null) {
+            return insertSegment(jpeg, orientation);
+        }
+        if (!jpeg.isReadOnly()) {
+            writeShort(jpeg, entry.offset + 8, orientation, entry.order);
+            return jpeg;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(jpeg.remaining());
+        copy.put(jpeg.duplicate());
+        copy.flip();
+        writeShort(copy, entry.offset - jpeg.position() + 8, orientation, entry.order);
+        return copy;
+    }
+
+    private static ByteBuffer insertSegment(ByteBuffer jpeg, int orientation) {
+        // Exif header, big endian TIFF header, IFD0 with the orientation entry only
+        int tiffLength = 8 + 2 + IFD_ENTRY_LENGTH + 4;
+        int segmentLength = 2 + EXIF_HEADER.length + tiffLength;
+        ByteBuffer result = ByteBuffer.allocate(jpeg.remaining() + 2 + segmentLength);
+        result.put((byte) MARKER_PREFIX).put((byte) SOI);
+        result.put((byte) MARKER_PREFIX).put((byte) APP1);
+        result.putShort((short) segmentLength);
+        result.put(EXIF_HEADER);
+        result.put((byte) 'M').put((byte) 'M').putShort((short) TIFF_MAGIC).putInt(8);
+        result.putShort((short) 1);
+        result.putShort((short) TAG_ORIENTATION).putShort((short) TYPE_SHORT).putInt(1);
+        result.putShort((short) orientation).putShort((short) 0);
+        result.putInt(0);
+        ByteBuffer rest = jpeg.duplicate();
+        rest.position(jpeg.position() + 2);
+        result.put(rest);
+        result.flip();
+        return result;
+    }
+
+    /**
+     * The IFD0 orientation entry of the first Exif segment, null if there is none.
+     */
+    private static OrientationEntry findOrientationEntry(ByteBuffer jpeg) {
+        ExifSegment segment = findExifSegment(jpeg);
+        if (segment == null) {
+            return null;
+        }
+        int entry = segment.findEntry(jpeg, segment.getIfd0(jpeg), TAG_ORIENTATION);
+        if (entry < 0 || readShort(jpeg, entry + 2, segment.order) != TYPE_SHORT) {
+            return null;
+        }
+        return new OrientationEntry(entry, segment.order);
+    }
+
+    /**
+     * The TIFF structure of the first Exif segment, null if the JPEG has none.
+     */
+    static ExifSegment findExifSegment(ByteBuffer jpeg) {
+        if (!isJpeg(jpeg)) {
+            return null;
+        }
+        int offset = jpeg.position() + 2;
+        while (offset + 4 <= jpeg.limit()) {
+            int marker = nextMarker(jpeg, offset);
+            if (marker < 0 || marker == SOS || marker == EOI) {
+                return null;
+            }
+            offset = skipFill(jpeg, offset);
+            int length = readShort(jpeg, offset + 2, ByteOrder.BIG_ENDIAN);
+            if (marker == APP1 && isExif(jpeg, offset + 4, length - 2)) {
+                int tiffStart = offset + 4 + EXIF_HEADER.length;
+                int segmentEnd = Math.min(offset + 2 + length, jpeg.limit());
+                if (tiffStart + 8 > segmentEnd) {
+                    return null;
+                }
+                ByteOrder order = getTiffByteOrder(jpeg, tiffStart);
+                if (order == null || readShort(jpeg, tiffStart + 2, order) != TIFF_MAGIC) {
+                    return null;
+                }
+                return new ExifSegment(tiffStart, segmentEnd, order);
+            }
+            offset += 2 + length;
+        }
+        return null;
+    }
+
+    private static ByteOrder getTiffByteOrder(ByteBuffer jpeg, int tiffStart) {
+        int first = jpeg.get(tiffStart) & 0xFF;
+        int second = jpeg.get(tiffStart + 1) & 0xFF;
+        if (first == 'I' && second == 'I') {
+            return ByteOrder.LITTLE_ENDIAN;
+        }
+        if (first == 'M' && second == 'M') {
+            return ByteOrder.BIG_ENDIAN;
+        }
+        return null;
+    }
+
+    private static boolean isJpeg(ByteBuffer jpeg) {
+        return jpeg.remaining() >= 4 && (jpeg.get(jpeg.position()) & 0xFF) == MARKER_PREFIX
+                && (jpeg.get(jpeg.position() + 1) & 0xFF) == SOI;
+    }
+
+    private static boolean isExif(ByteBuffer jpeg, int offset, int length) {
+        if (length < EXIF_HEADER.length || offset + EXIF_HEADER.length > jpeg.limit()) {
+            return false;
+        }
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (jpeg.get(offset + i) != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0 to SOF15, except DHT, JPG and DAC which share the range
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * The marker at the offset, -1 if there is no marker.
+     */
+    private static int nextMarker(ByteBuffer jpeg, int offset) {
+        offset = skipFill(jpeg, offset);
+        if (offset + 4 > jpeg.limit() || (jpeg.get(offset) & 0xFF) != MARKER_PREFIX) {
+            return -1;
+        }
+        return jpeg.get(offset + 1) & 0xFF;
+    }
+
+    private static int skipFill(ByteBuffer jpeg, int offset) {
+        // any marker may be preceded by fill bytes
+        while (offset + 1 < jpeg.limit() && (jpeg.get(offset) & 0xFF) == MARKER_PREFIX
+                && (jpeg.get(offset + 1) & 0xFF) == MARKER_PREFIX) {
+            offset++;
+        }
+        return offset;
+    }
+
+    static int readShort(ByteBuffer buffer, int offset, ByteOrder order) {
+        int first = buffer.get(offset) & 0xFF;
+        int second = buffer.get(offset + 1) & 0xFF;
+        return order == ByteOrder.BIG_ENDIAN ? first << 8 | second : second << 8 | first;
+    }
+
+    static int readInt(ByteBuffer buffer, int offset, ByteOrder order) {
+        int high = readShort(buffer, offset, order);
+        int low = readShort(buffer, offset + 2, order);
+        return order == ByteOrder.BIG_ENDIAN ? high << 16 | low : low << 16 | high;
+    }
+
+    private static void writeShort(ByteBuffer buffer, int offset, int value, ByteOrder order) {
+        byte high = (byte) (value >>> 8);
+        byte low = (byte) value;
+        buffer.put(offset, order == ByteOrder.BIG_ENDIAN ? high : low);
+        buffer.put(offset + 1, order == ByteOrder.BIG_ENDIAN ? low : high);
+    }
+
+    /**
+     * The TIFF header and the IFDs of an Exif segment, offsets are absolute positions in the JPEG
+     * buffer.
+     */
+    static final class ExifSegment {
+
+        final int tiffStart;
+        final int end;
+        final ByteOrder order;
+
+        ExifSegment(int tiffStart, int end, ByteOrder order) {
+            this.tiffStart = tiffStart;
+            this.end = end;
+            this.order = order;
+        }
+
+        int getIfd0(ByteBuffer jpeg) {
+            return toPosition(readInt(jpeg, tiffStart + 4, order), 2);
+        }
+
+        /**
+         * The IFD following the one at the position, -1 if it is the last one.
+         */
+        int getNextIfd(ByteBuffer jpeg, int ifd) {
+            if (ifd < 0) {
+                return -1;
+            }
+            int link = ifd + 2 + readShort(jpeg, ifd, order) * IFD_ENTRY_LENGTH;
+            if (link + 4 > end) {
+                return -1;
+            }
+            long offset = readInt(jpeg, link, order) & 0xFFFFFFFFL;
+            return offset == 0 ? -1 : toPosition(offset, 2);
+        }
+
+        /**
+         * Position of the entry with the tag in the IFD, -1 if there is none.
+         */
+        int findEntry(ByteBuffer jpeg, int ifd, int tag) {
+            if (ifd < 0) {
+                return -1;
+            }
+            int entryCount = readShort(jpeg, ifd, order);
+            for (int i = 0; i < entryCount; i++) {
+                int entry = ifd + 2 + i * IFD_ENTRY_LENGTH;
+                if (entry + IFD_ENTRY_LENGTH > end) {
+                    return -1;
+                }
+                if (readShort(jpeg, entry, order) == tag) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Position of a TIFF offset, -1 if the given length does not fit into the segment.
+         */
+        int toPosition(long offset, long length) {
+            offset &= 0xFFFFFFFFL;
+            if (length < 0 || tiffStart + offset + length > end) {
+                return -1;
+            }
+            return (int) (tiffStart + offset);
+        }
+    }
+
+    private static final class OrientationEntry {
+
+        final int offset;
+        final ByteOrder order;
+
+        OrientationEntry(int offset, ByteOrder order) {
+            this.offset = offset;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.supercharge.sccameraview;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the thumbnail JPEG the camera embeds in the IFD1 of the Exif segment, without copying or
+ * decoding anything.
+ */
+final class ExifThumbnail {
+
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+
+    private ExifThumbnail() {
+    }
+
+    /**
+     * A view of the thumbnail bytes within the JPEG, null if it has no thumbnail.
+     */
+    static ByteBuffer find(ByteBuffer jpeg) {
+        ExifOrientation.ExifSegment segment = ExifOrientation.findExifSegment(jpeg);
+        if (segment == null) {
+            return null;
+        }
+        int ifd1 = segment.getNextIfd(jpeg, segment.getIfd0(jpeg));
+        int offsetEntry = segment.findEntry(jpeg, ifd1, TAG_JPEG_INTERCHANGE_FORMAT);
+        int lengthEntry = segment.findEntry(jpeg, ifd1, TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+        if (offsetEntry < 0 || lengthEntry < 0) {
+            return null;
+        }
+        // both are single LONG values stored in the entry itself
+        long length = ExifOrientation.readInt(jpeg, lengthEntry + 8, segment.order) & 0xFFFFFFFFL;
+        int start = segment.toPosition(ExifOrientation.readInt(jpeg, offsetEntry + 8, segment.order), length);
+        if (start < 0 || length < 4) {
+            return null;
+        }
+        ByteBuffer thumbnail = jpeg.duplicate();
+        thumbnail.limit(start + (int) length);
+        thumbnail.position(start);
+        if ((thumbnail.get(start) & 0xFF) != 0xFF || (thumbnail.get(start + 1) & 0xFF) != 0xD8) {
+            return null;
+        }
+        return thumbnail;
+    }
+}
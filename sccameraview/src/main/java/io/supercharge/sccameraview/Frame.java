@@ -0,0 +1,62 @@
+package io.supercharge.sccameraview;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A preview frame handed to {@link FrameAnalyzer}s. The data is NV21: the full resolution luminance
+ * plane followed by the interleaved V and U samples. Frames are pooled and reused, so they must
+ * not be referenced after {@link FrameAnalyzer#analyze(Frame)} returns.
+ */
+public class Frame {
+
+    private final AtomicInteger referenceCount = new AtomicInteger();
+    private final FrameAnalysisDispatcher dispatcher;
+    byte[] data;
+    int length;
+    int format;
+    int width;
+    int height;
+    long timestampNanos;
+
+    Frame(FrameAnalysisDispatcher dispatcher, int capacity) {
+        this.dispatcher = dispatcher;
+        data = new byte[capacity];
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Number of valid bytes in {@link #getData()}, the array itself may be larger.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    void retain() {
+        referenceCount.incrementAndGet();
+    }
+
+    void release() {
+        if (referenceCount.decrementAndGet() == 0) {
+            dispatcher.recycle(this);
+        }
+    }
+}
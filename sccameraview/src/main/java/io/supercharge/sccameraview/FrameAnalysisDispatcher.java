@@ -0,0 +1,182 @@
+package io.supercharge.sccameraview;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Hands preview frames to the registered {@link FrameAnalyzer}s. Every analyzer runs on its own
+ * thread and only ever has one frame waiting: a new frame replaces the waiting one, so a slow
+ * analyzer neither stalls the camera nor the other analyzers. Frames are reference counted and
+ * recycled once every analyzer is done with them.
+ */
+class FrameAnalysisDispatcher {
+
+    private static final int MAX_POOLED_FRAMES = 4;
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    private final List<AnalyzerSlot> slots = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<Frame> framePool = new ArrayDeque<>();
+
+    void addAnalyzer(FrameAnalyzer analyzer) {
+        if (findSlot(analyzer) == null) {
+            slots.add(new AnalyzerSlot(analyzer));
+        }
+    }
+
+    void removeAnalyzer(FrameAnalyzer analyzer) {
+        AnalyzerSlot slot = findSlot(analyzer);
+        if (slot != null) {
+            slots.remove(slot);
+            slot.clear();
+        }
+    }
+
+    boolean hasAnalyzers() {
+        return !slots.isEmpty();
+    }
+
+    AnalyzerStats getStats(FrameAnalyzer analyzer) {
+        AnalyzerSlot slot = findSlot(analyzer);
+        return slot != null ? slot.stats : null;
+    }
+
+    /**
+     * Returns a pooled frame with at least {@code length} bytes of data for the producer to fill.
+     */
+    Frame obtainFrame(int format, int width, int height, int length, long timestampNanos) {
+        Frame frame = null;
+        synchronized (framePool) {
+            Iterator<Frame> iterator = framePool.iterator();
+            while (iterator.hasNext()) {
+                Frame pooled = iterator.next();
+                if (pooled.data.length >= length) {
+                    iterator.remove();
+                    frame = pooled;
+                    break;
+                }
+            }
+        }
+        if (frame == null) {
+            frame = new Frame(this, length);
+        }
+        frame.format = format;
+        frame.width = width;
+        frame.height = height;
+        frame.length = length;
+        frame.timestampNanos = timestampNanos;
+        return frame;
+    }
+
+    /**
+     * Offers a frame obtained from {@link #obtainFrame} to every analyzer. The producer must not
+     * touch the frame afterwards.
+     */
+    void dispatch(Frame frame) {
+        frame.retain();
+        for (AnalyzerSlot slot : slots) {
+            slot.offer(frame);
+        }
+        frame.release();
+    }
+
+    void recycle(Frame frame) {
+        synchronized (framePool) {
+            if (framePool.size() < MAX_POOLED_FRAMES) {
+                framePool.addLast(frame);
+            }
+        }
+    }
+
+    private AnalyzerSlot findSlot(FrameAnalyzer analyzer) {
+        for (AnalyzerSlot slot : slots) {
+            if (slot.analyzer == analyzer) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private static class AnalyzerSlot implements Runnable {
+
+        final FrameAnalyzer analyzer;
+        final AnalyzerStats stats = new AnalyzerStats();
+        private final ThreadPoolExecutor executor;
+        private Frame pendingFrame;
+        private boolean running;
+
+        AnalyzerSlot(final FrameAnalyzer analyzer) {
+            this.analyzer = analyzer;
+            executor = new ThreadPoolExecutor(0, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "FrameAnalyzer-" + analyzer.getClass().getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        synchronized void offer(Frame frame) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            frame.retain();
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                stats.recordDropped();
+            }
+            pendingFrame = frame;
+            if (!running) {
+                running = true;
+                executor.execute(this);
+            }
+        }
+
+        synchronized void clear() {
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                pendingFrame = null;
+            }
+            executor.shutdown();
+        }
+
+        @SuppressWarnings("checkstyle:illegalcatch")
+        @Override
+        public void run() {
+            while (true) {
+                Frame frame;
+                synchronized (this) {
+                    frame = pendingFrame;
+                    pendingFrame = null;
+                    if (frame == null) {
+                        running = false;
+                        return;
+                    }
+                }
+
+                long startTime = System.nanoTime();
+                boolean failed = false;
+                try {
+                    analyzer.analyze(frame);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Frame analyzer " + analyzer + " failed", e);
+                    failed = true;
+                } finally {
+                    frame.release();
+                }
+                stats.recordProcessed(System.nanoTime() - startTime, failed);
+            }
+        }
+    }
+}
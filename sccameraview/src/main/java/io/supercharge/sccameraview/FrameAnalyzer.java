@@ -0,0 +1,11 @@
+package io.supercharge.sccameraview;
+
+
+public interface FrameAnalyzer {
+    /**
+     * Called on the analyzer's own thread with the latest preview frame. The frame and its data are
+     * only valid until this method returns. Frames arriving while this method runs are dropped
+     * except for the latest one.
+     */
+    void analyze(Frame frame);
+}
@@ -0,0 +1,88 @@
+package io.supercharge.sccameraview;
+
+import android.media.Image;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+/**
+ * Fixed size ring of the most recent images produced by a zero-shutter-lag ImageReader.
+ * The oldest image is closed when a new one arrives to a full ring, so the reader
+ * has to be created with at least {@code capacity + 2} max images.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+class ImageRing {
+
+    private final Image[] images;
+    private int head;
+    private int size;
+
+    ImageRing(int capacity) {
+        images = new Image[capacity];
+    }
+
+    synchronized void add(Image image) {
+        if (size == images.length) {
+            images[head].close();
+            images[head] = image;
+            head = (head + 1) % images.length;
+        } else {
+            images[(head + size) % images.length] = image;
+            size++;
+        }
+    }
+
+    synchronized Image takeNearest(long timestamp) {
+        if (size == 0) {
+            return null;
+        }
+        int nearestIdx = head;
+        long minDifference = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int idx = (head + i) % images.length;
+            long difference = Math.abs(images[idx].getTimestamp() - timestamp);
+            if (difference <= minDifference) {
+                minDifference = difference;
+                nearestIdx = idx;
+            }
+        }
+
+        return removeAt(nearestIdx);
+    }
+
+    /**
+     * The image of exactly the timestamp, null if the ring has none.
+     */
+    synchronized Image take(long timestamp) {
+        for (int i = 0; i < size; i++) {
+            int idx = (head + i) % images.length;
+            if (images[idx].getTimestamp() == timestamp) {
+                return removeAt(idx);
+            }
+        }
+        return null;
+    }
+
+    private Image removeAt(int removedIdx) {
+        Image removed = images[removedIdx];
+        for (int i = removedIdx; i != (head + size - 1) % images.length; i = (i + 1) % images.length) {
+            images[i] = images[(i + 1) % images.length];
+        }
+        images[(head + size - 1) % images.length] = null;
+        size--;
+        return removed;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            int idx = (head + i) % images.length;
+            images[idx].close();
+            images[idx] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,60 @@
+package io.supercharge.sccameraview;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+public class ImageSaveResult {
+
+    private final File file;
+    private final Uri uri;
+    private final long writeTimeNanos;
+    private final boolean successful;
+    private final List<DerivedImage> derivedImages;
+
+    ImageSaveResult(File file, long writeTimeNanos, boolean successful) {
+        this(file, null, writeTimeNanos, successful, Collections.<DerivedImage>emptyList());
+    }
+
+    ImageSaveResult(File file, Uri uri, long writeTimeNanos, boolean successful, List<DerivedImage> derivedImages) {
+        this.file = file;
+        this.uri = uri;
+        this.writeTimeNanos = writeTimeNanos;
+        this.successful = successful;
+        this.derivedImages = derivedImages;
+    }
+
+    /**
+     * Null if the picture was not written to a file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The content Uri of pictures written to the MediaStore, null otherwise.
+     */
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * Time spent writing the file, not including the time the request waited in the queue.
+     */
+    public long getWriteTimeNanos() {
+        return writeTimeNanos;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * The requested {@link DerivedOutput}s that could be generated, in the requested order.
+     */
+    public List<DerivedImage> getDerivedImages() {
+        return derivedImages;
+    }
+}
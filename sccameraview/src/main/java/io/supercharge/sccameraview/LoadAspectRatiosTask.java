@@ -4,9 +4,6 @@ package io.supercharge.sccameraview;
 import android.content.Context;
 import android.os.AsyncTask;
 
-import java.util.Collections;
-import java.util.Comparator;
-
 public class LoadAspectRatiosTask extends AsyncTask {
 
     Context context;
@@ -19,16 +16,9 @@ public class LoadAspectRatiosTask extends AsyncTask {
 
     @Override
     protected Object doInBackground(Object[] objects) {
+        // the collected ratios come sorted from the capabilities
         cameraView.collectRatioSizes();
-
-        if (!cameraView.getRatioSizeList().isEmpty()) {
-            Collections.sort(cameraView.ratioSizeList, new Comparator<AspectRatio>() {
-                @Override
-                public int compare(AspectRatio p1, AspectRatio p2) {
-                    return p1.getRatio() < p2.getRatio() ? -1 : 1;
-                }
-            });
-        }
+        CapabilitySnapshotStore.save(context, CameraCapabilityCache.getInstance().getAll());
 
         return cameraView.getRatioSizeList();
     }
@@ -0,0 +1,211 @@
+package io.supercharge.sccameraview;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Where one picture or video is written, created by an {@link OutputTarget}. Opening is deferred
+ * until the first write or until the target opens it ahead of the shutter, so creating a
+ * destination never blocks. A destination is written once and then committed or aborted.
+ */
+public abstract class MediaDestination {
+
+    private OutputStream stream;
+    private boolean closed;
+
+    /**
+     * Written to the file, its directory is created if it does not exist yet.
+     */
+    public static MediaDestination of(File file) {
+        return new FileDestination(file);
+    }
+
+    /**
+     * Written to a descriptor owned by the caller, it is left open.
+     */
+    public static MediaDestination of(FileDescriptor fileDescriptor) {
+        return new FileDescriptorDestination(fileDescriptor);
+    }
+
+    /**
+     * Written to the stream, which is closed once the write is done. Cannot be used for videos.
+     */
+    public static MediaDestination of(OutputStream outputStream) {
+        return new StreamDestination(outputStream);
+    }
+
+    /**
+     * Null if the destination is not a file.
+     */
+    public File getFile() {
+        return null;
+    }
+
+    /**
+     * Null if the destination is not a content Uri.
+     */
+    public Uri getUri() {
+        return null;
+    }
+
+    /**
+     * Opens the stream, subclasses return a {@link FileOutputStream} when they can, so direct
+     * buffers are written through its channel.
+     */
+    abstract OutputStream openStream() throws IOException;
+
+    /**
+     * The descriptor of the opened stream, null if it has none.
+     */
+    FileDescriptor getFileDescriptor() throws IOException {
+        OutputStream stream = open();
+        return stream instanceof FileOutputStream ? ((FileOutputStream) stream).getFD() : null;
+    }
+
+    /**
+     * Makes the written media visible, after the stream was closed. The destination is aborted if
+     * this fails.
+     */
+    void onCommitted() throws IOException {
+    }
+
+    /**
+     * Removes whatever was written, after the stream was closed.
+     */
+    void onAborted() {
+    }
+
+    synchronized OutputStream open() throws IOException {
+        if (closed) {
+            throw new IOException("Destination already closed");
+        }
+        if (stream == null) {
+            stream = openStream();
+        }
+        return stream;
+    }
+
+    synchronized boolean isOpen() {
+        return stream != null && !closed;
+    }
+
+    void commit() throws IOException {
+        if (close()) {
+            onCommitted();
+        }
+    }
+
+    void abort() {
+        try {
+            close();
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Error closing destination: " + e.getMessage());
+        }
+        onAborted();
+    }
+
+    /**
+     * Closes the stream, false if it was closed before.
+     */
+    synchronized boolean close() throws IOException {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        if (stream != null) {
+            stream.close();
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (getFile() != null) {
+            return getFile().toString();
+        }
+        return getUri() != null ? getUri().toString() : super.toString();
+    }
+
+    static class FileDestination extends MediaDestination {
+
+        private final File file;
+
+        FileDestination(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        OutputStream openStream() throws IOException {
+            try {
+                return new FileOutputStream(file);
+            } catch (FileNotFoundException e) {
+                // the directory is only created when it turns out to be missing, not on every write
+                File directory = file.getParentFile();
+                if (directory == null || directory.exists() || !directory.mkdirs()) {
+                    throw e;
+                }
+                return new FileOutputStream(file);
+            }
+        }
+
+        @Override
+        void onAborted() {
+            if (file.exists() && !file.delete()) {
+                Log.d(LOG_TAG, "Cannot delete the unused file " + file);
+            }
+        }
+    }
+
+    private static class FileDescriptorDestination extends MediaDestination {
+
+        private final FileDescriptor fileDescriptor;
+
+        FileDescriptorDestination(FileDescriptor fileDescriptor) {
+            this.fileDescriptor = fileDescriptor;
+        }
+
+        @Override
+        OutputStream openStream() {
+            return new FileOutputStream(fileDescriptor) {
+                @Override
+                public void close() throws IOException {
+                    // the caller owns the descriptor
+                    flush();
+                }
+            };
+        }
+
+        @Override
+        FileDescriptor getFileDescriptor() {
+            return fileDescriptor;
+        }
+    }
+
+    private static class StreamDestination extends MediaDestination {
+
+        private final OutputStream outputStream;
+
+        StreamDestination(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        OutputStream openStream() {
+            return outputStream;
+        }
+    }
+}
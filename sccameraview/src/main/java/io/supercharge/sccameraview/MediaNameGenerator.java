@@ -0,0 +1,57 @@
+package io.supercharge.sccameraview;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Names media after the second it was captured in, e.g. {@code IMG_20170301_120000.jpg}. Further
+ * names within the same second get a sequence number, {@code IMG_20170301_120000-1.jpg}, so
+ * bursts never overwrite each other. The timestamp is only formatted once per second. One sequence
+ * is shared by every output target.
+ */
+final class MediaNameGenerator {
+
+    private static final MediaNameGenerator INSTANCE = new MediaNameGenerator();
+
+    private final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+    private final StringBuilder builder = new StringBuilder();
+    private long second = -1;
+    private String timestamp;
+    private int sequence;
+
+    private MediaNameGenerator() {
+    }
+
+    static String nextName(String prefix, String suffix, String extension) {
+        return INSTANCE.next(prefix, suffix, extension);
+    }
+
+    /**
+     * A file of the directory that does not exist yet, e.g. one left by another process.
+     */
+    static File nextFile(File directory, String prefix, String suffix, String extension) {
+        File file;
+        do {
+            file = new File(directory, nextName(prefix, suffix, extension));
+        } while (file.exists());
+        return file;
+    }
+
+    private synchronized String next(String prefix, String suffix, String extension) {
+        long now = System.currentTimeMillis();
+        if (now / 1000 != second) {
+            second = now / 1000;
+            timestamp = format.format(new Date(now));
+            sequence = 0;
+        }
+        builder.setLength(0);
+        builder.append(prefix).append(timestamp);
+        if (sequence > 0) {
+            builder.append('-').append(sequence);
+        }
+        sequence++;
+        return builder.append(suffix).append(extension).toString();
+    }
+}
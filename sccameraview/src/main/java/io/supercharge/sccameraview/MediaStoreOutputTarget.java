@@ -0,0 +1,132 @@
+package io.supercharge.sccameraview;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Inserts pictures and videos into the MediaStore. From Android 10 on the entries are placed by
+ * their relative path and stay pending until committed, before that they are files in the public
+ * directories. The entry is inserted and opened when the destination is opened. Only pending
+ * entries are opened ahead of the shutter, an entry visible in the gallery while the camera is
+ * idle would be left empty if the process died.
+ */
+class MediaStoreOutputTarget extends OutputTarget {
+
+    // added in Android 10, newer than the compile SDK
+    private static final int SCOPED_STORAGE_SDK = 29;
+    private static final String COLUMN_RELATIVE_PATH = "relative_path";
+    private static final String COLUMN_IS_PENDING = "is_pending";
+
+    private final ContentResolver contentResolver;
+    private final String albumName;
+
+    MediaStoreOutputTarget(ContentResolver contentResolver, String albumName) {
+        this.contentResolver = contentResolver;
+        this.albumName = albumName;
+    }
+
+    @Override
+    boolean canOpenAhead() {
+        return Build.VERSION.SDK_INT >= SCOPED_STORAGE_SDK;
+    }
+
+    @Override
+    public MediaDestination createDestination(int mediaType, String suffix) {
+        boolean video = mediaType == MEDIA_TYPE_VIDEO;
+        return new MediaStoreDestination(video, suffix);
+    }
+
+    private class MediaStoreDestination extends MediaDestination {
+
+        private final boolean video;
+        private final String suffix;
+        private volatile Uri uri;
+
+        MediaStoreDestination(boolean video, String suffix) {
+            this.video = video;
+            this.suffix = suffix;
+        }
+
+        private String nextDisplayName() {
+            return MediaNameGenerator.nextName(video ? "VID_" : "IMG_", suffix, video ? ".mp4" : ".jpg");
+        }
+
+        @Override
+        public Uri getUri() {
+            return uri;
+        }
+
+        @Override
+        OutputStream openStream() throws IOException {
+            String directory = video ? Environment.DIRECTORY_MOVIES : Environment.DIRECTORY_PICTURES;
+            String displayName = nextDisplayName();
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+            values.put(MediaStore.MediaColumns.MIME_TYPE, video ? "video/mp4" : "image/jpeg");
+            values.put(video ? MediaStore.Video.VideoColumns.DATE_TAKEN : MediaStore.Images.ImageColumns.DATE_TAKEN,
+                    System.currentTimeMillis());
+            File file = null;
+            if (Build.VERSION.SDK_INT >= SCOPED_STORAGE_SDK) {
+                values.put(COLUMN_RELATIVE_PATH, directory + File.separator + albumName);
+                values.put(COLUMN_IS_PENDING, 1);
+            } else {
+                file = new File(new File(Environment.getExternalStoragePublicDirectory(directory), albumName),
+                        displayName);
+                values.put(MediaStore.MediaColumns.DATA, file.getPath());
+            }
+
+            uri = contentResolver.insert(video ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                    : MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if (uri == null) {
+                throw new IOException("Cannot insert " + displayName + " into the MediaStore");
+            }
+            ParcelFileDescriptor descriptor;
+            try {
+                descriptor = contentResolver.openFileDescriptor(uri, "w");
+            } catch (FileNotFoundException e) {
+                // the album directory is only created when it turns out to be missing
+                if (file == null || file.getParentFile().exists() || !file.getParentFile().mkdirs()) {
+                    throw e;
+                }
+                descriptor = contentResolver.openFileDescriptor(uri, "w");
+            }
+            if (descriptor == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            return new ParcelFileDescriptor.AutoCloseOutputStream(descriptor);
+        }
+
+        @Override
+        void onCommitted() {
+            if (uri != null && Build.VERSION.SDK_INT >= SCOPED_STORAGE_SDK) {
+                // opened ahead of the shutter, named after the moment it is saved
+                ContentValues values = new ContentValues();
+                values.put(MediaStore.MediaColumns.DISPLAY_NAME, nextDisplayName());
+                values.put(video ? MediaStore.Video.VideoColumns.DATE_TAKEN : MediaStore.Images.ImageColumns.DATE_TAKEN,
+                        System.currentTimeMillis());
+                values.put(COLUMN_IS_PENDING, 0);
+                contentResolver.update(uri, values, null, null);
+            }
+        }
+
+        @Override
+        void onAborted() {
+            if (uri != null && contentResolver.delete(uri, null, null) == 0) {
+                Log.d(LOG_TAG, "Cannot delete the unused entry " + uri);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.supercharge.sccameraview;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+public class MediaWriteRequest {
+
+    private final ByteBuffer buffer;
+    private final MediaDestination destination;
+    private final boolean userInitiated;
+    private final OnImageSavedListener listener;
+    private final Runnable releaseCallback;
+    private final List<DerivedOutput> derivedOutputs;
+    private final OutputTarget outputTarget;
+
+    public MediaWriteRequest(byte[] data, File file, boolean userInitiated, OnImageSavedListener listener) {
+        this(data != null ? ByteBuffer.wrap(data) : null, file, userInitiated, listener, null);
+    }
+
+    /**
+     * The buffer is only valid until {@link #release()} is called, which the writer has to do once
+     * the buffer has been written or the request has been dropped.
+     */
+    public MediaWriteRequest(ByteBuffer buffer, File file, boolean userInitiated, OnImageSavedListener listener,
+                             Runnable releaseCallback) {
+        this(buffer, file != null ? MediaDestination.of(file) : null, userInitiated, listener, releaseCallback,
+                Collections.<DerivedOutput>emptyList(), null);
+    }
+
+    /**
+     * The writer commits the destination once the buffer has been written, or aborts it. Derived
+     * outputs that are encoded again are written to the output target.
+     */
+    public MediaWriteRequest(ByteBuffer buffer, MediaDestination destination, boolean userInitiated,
+                             OnImageSavedListener listener, Runnable releaseCallback,
+                             List<DerivedOutput> derivedOutputs, OutputTarget outputTarget) {
+        this.buffer = buffer;
+        this.destination = destination;
+        this.userInitiated = userInitiated;
+        this.listener = listener;
+        this.releaseCallback = releaseCallback;
+        this.derivedOutputs = derivedOutputs;
+        this.outputTarget = outputTarget;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public MediaDestination getDestination() {
+        return destination;
+    }
+
+    /**
+     * Null if the destination is not a file.
+     */
+    public File getFile() {
+        return destination != null ? destination.getFile() : null;
+    }
+
+    public boolean isUserInitiated() {
+        return userInitiated;
+    }
+
+    public OnImageSavedListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Variants to generate from the buffer before it is released, delivered with the result.
+     */
+    public List<DerivedOutput> getDerivedOutputs() {
+        return derivedOutputs;
+    }
+
+    /**
+     * Where derived outputs are written, null if they are not written.
+     */
+    public OutputTarget getOutputTarget() {
+        return outputTarget;
+    }
+
+    public void release() {
+        if (releaseCallback != null) {
+            releaseCallback.run();
+        }
+    }
+}
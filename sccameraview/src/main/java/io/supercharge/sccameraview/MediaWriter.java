@@ -0,0 +1,11 @@
+package io.supercharge.sccameraview;
+
+/**
+ * Writes captured media to its destination off the main thread. The result of every request
+ * has to be delivered to the request's {@link OnImageSavedListener} on the main thread, along
+ * with the {@link ImageSaveResult} if it is an {@link OnImageResultListener}. Burst frames are
+ * only counted once their result is delivered.
+ */
+public interface MediaWriter {
+    void write(MediaWriteRequest request);
+}
@@ -0,0 +1,6 @@
+package io.supercharge.sccameraview;
+
+
+public interface OnBurstCompletedListener {
+    void onBurstCompleted(int savedFrames, int droppedFrames);
+}
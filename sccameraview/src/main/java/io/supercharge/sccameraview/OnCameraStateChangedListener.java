@@ -0,0 +1,6 @@
+package io.supercharge.sccameraview;
+
+
+public interface OnCameraStateChangedListener {
+    void onCameraStateChanged(CameraState state);
+}
@@ -0,0 +1,9 @@
+package io.supercharge.sccameraview;
+
+
+public interface OnCameraSwitchListener {
+    /**
+     * Called on the main thread once the first preview of the new camera is configured.
+     */
+    void onCameraSwitched(boolean frontFacing, long latencyMillis);
+}
@@ -0,0 +1,9 @@
+package io.supercharge.sccameraview;
+
+/**
+ * An {@link OnImageSavedListener} that is also told the outcome of the write, right after
+ * {@link #onImageSaved()}.
+ */
+public interface OnImageResultListener extends OnImageSavedListener {
+    void onImageSaved(ImageSaveResult result);
+}
@@ -0,0 +1,10 @@
+package io.supercharge.sccameraview;
+
+
+public interface OnPreviewFrameListener {
+    /**
+     * Called for every Camera1 preview frame. The frame has to be released once it is not
+     * needed anymore, it may be kept and released on another thread.
+     */
+    void onPreviewFrame(PreviewFrame frame);
+}
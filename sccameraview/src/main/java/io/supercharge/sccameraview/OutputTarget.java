@@ -0,0 +1,110 @@
+package io.supercharge.sccameraview;
+
+import android.content.ContentResolver;
+import android.os.Environment;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Creates the {@link MediaDestination} of every picture and video. Where the target allows it,
+ * the destination of the next picture is opened ahead of the shutter, so the write starts as soon
+ * as the JPEG arrives.
+ * Subclasses may return destinations of any kind, e.g. descriptors or streams handed out by the
+ * app.
+ */
+public abstract class OutputTarget {
+
+    public static final int MEDIA_TYPE_IMAGE = 1;
+    public static final int MEDIA_TYPE_VIDEO = 2;
+
+    private final AtomicReference<MediaDestination> preparedImage = new AtomicReference<>();
+
+    /**
+     * Pictures and videos in the public Pictures and Movies directories.
+     */
+    public static OutputTarget publicDirectories() {
+        return directories(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES),
+                Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES));
+    }
+
+    public static OutputTarget directories(File pictureDirectory, File videoDirectory) {
+        return new DirectoryOutputTarget(pictureDirectory, videoDirectory);
+    }
+
+    /**
+     * Pictures and videos inserted into the MediaStore, in an album of the given name. From
+     * Android 10 on nothing is visible to other apps until the write is complete. Before that an
+     * entry is visible while it is written, so pictures are not opened ahead of the shutter.
+     */
+    public static OutputTarget mediaStore(ContentResolver contentResolver, String albumName) {
+        return new MediaStoreOutputTarget(contentResolver, albumName);
+    }
+
+    /**
+     * A new destination, {@code suffix} is appended to the generated name. Called on the camera
+     * thread or a background thread, opening should be left to
+     * {@link MediaDestination#openStream()}.
+     */
+    public abstract MediaDestination createDestination(int mediaType, String suffix);
+
+    /**
+     * The destination opened ahead of time if there is one, otherwise a new one.
+     */
+    MediaDestination takeImageDestination() {
+        MediaDestination destination = preparedImage.getAndSet(null);
+        return destination != null ? destination : createDestination(MEDIA_TYPE_IMAGE, "");
+    }
+
+    /**
+     * Creates the destination of the next picture and opens it on the executor, unless one is
+     * prepared already.
+     */
+    void prepareImageDestination(Executor executor) {
+        if (!canOpenAhead() || preparedImage.get() != null) {
+            return;
+        }
+        final MediaDestination destination = createDestination(MEDIA_TYPE_IMAGE, "");
+        if (destination == null || !preparedImage.compareAndSet(null, destination)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @SuppressWarnings("checkstyle:illegalcatch")
+            @Override
+            public void run() {
+                try {
+                    destination.open();
+                } catch (IOException | RuntimeException e) {
+                    // a destination taken meanwhile is opened again by the write, which reports the error
+                    Log.d(LOG_TAG, "Cannot open the next destination: " + e.getMessage());
+                    if (preparedImage.compareAndSet(destination, null)) {
+                        destination.abort();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * False if an opened destination is visible before it is written, so pictures are only opened
+     * when their data arrives.
+     */
+    boolean canOpenAhead() {
+        return true;
+    }
+
+    /**
+     * Drops the destination opened ahead of time, e.g. when the camera is closed.
+     */
+    void releasePreparedDestinations() {
+        MediaDestination destination = preparedImage.getAndSet(null);
+        if (destination != null) {
+            destination.abort();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.supercharge.sccameraview;
+
+import android.graphics.ImageFormat;
+
+import java.util.ArrayDeque;
+
+/**
+ * Recycles the NV21 callback buffers of a Camera1 preview. Buffers are sized from the selected
+ * aspect ratio; changing the size drops the pooled buffers of the old size. Hits and misses of
+ * {@link #acquire()} are counted, a warm pool should only ever hit.
+ */
+class PreviewBufferPool {
+
+    private final int maxLeasedFrames;
+    private final ArrayDeque<byte[]> buffers = new ArrayDeque<>();
+    private final ArrayDeque<PreviewFrame> frames = new ArrayDeque<>();
+    private int bufferSize;
+    private int leasedFrames;
+    private long hitCount;
+    private long missCount;
+
+    PreviewBufferPool(int maxLeasedFrames) {
+        this.maxLeasedFrames = maxLeasedFrames;
+    }
+
+    static int getBufferSize(int width, int height) {
+        return width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+    }
+
+    synchronized void setBufferSize(int bufferSize) {
+        if (this.bufferSize != bufferSize) {
+            this.bufferSize = bufferSize;
+            buffers.clear();
+        }
+    }
+
+    synchronized byte[] acquire() {
+        byte[] buffer = buffers.pollFirst();
+        if (buffer != null) {
+            hitCount++;
+            return buffer;
+        }
+        missCount++;
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Wraps a filled buffer into a frame for the consumers. Returns null when too many frames are
+     * leased already, the caller should give the buffer straight back to the camera then.
+     */
+    synchronized PreviewFrame lease(byte[] data, int width, int height, long timestampNanos) {
+        if (leasedFrames >= maxLeasedFrames) {
+            return null;
+        }
+        leasedFrames++;
+        PreviewFrame frame = frames.pollFirst();
+        if (frame == null) {
+            frame = new PreviewFrame(this);
+        }
+        frame.data = data;
+        frame.width = width;
+        frame.height = height;
+        frame.timestampNanos = timestampNanos;
+        frame.retain();
+        return frame;
+    }
+
+    /**
+     * Takes back a buffer that was never leased, e.g. one the camera dropped from its queue.
+     */
+    synchronized void release(byte[] buffer) {
+        if (buffer.length == bufferSize && buffers.size() < maxLeasedFrames) {
+            buffers.addLast(buffer);
+        }
+    }
+
+    synchronized void recycle(PreviewFrame frame) {
+        leasedFrames--;
+        if (frame.data.length == bufferSize && buffers.size() < maxLeasedFrames) {
+            buffers.addLast(frame.data);
+        }
+        frame.data = null;
+        if (frames.size() < maxLeasedFrames) {
+            frames.addLast(frame);
+        }
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,57 @@
+package io.supercharge.sccameraview;
+
+/**
+ * A Camera1 preview frame leased from the preview buffer pool. The data stays valid until
+ * {@link #release()} is called, which hands the buffer back to the pool. Frames that are never
+ * released make the pool allocate new buffers.
+ */
+public class PreviewFrame {
+
+    private final PreviewBufferPool pool;
+    private int referenceCount;
+    byte[] data;
+    int width;
+    int height;
+    long timestampNanos;
+
+    PreviewFrame(PreviewBufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * NV21 preview data.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public void release() {
+        boolean released;
+        synchronized (this) {
+            if (referenceCount == 0) {
+                return;
+            }
+            referenceCount--;
+            released = referenceCount == 0;
+        }
+        if (released) {
+            pool.recycle(this);
+        }
+    }
+
+    synchronized void retain() {
+        referenceCount++;
+    }
+}
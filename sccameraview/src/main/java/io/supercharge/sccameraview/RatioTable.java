@@ -0,0 +1,201 @@
+package io.supercharge.sccameraview;
+
+/**
+ * Distinct aspect ratios of a camera size table, on primitives only. Ratios are compared exactly by
+ * cross multiplication. Real tables have a handful of distinct ratios, which a linear scan handles
+ * fastest; past {@link #LINEAR_SCAN_LIMIT} distinct ratios the reduced fractions go into an open
+ * addressing hash set, so the worst case stays linear. Kept free of Android classes so the
+ * benchmarks module can run it on a plain JVM.
+ */
+final class RatioTable {
+
+    static final int LINEAR_SCAN_LIMIT = 16;
+    private static final long EMPTY_SLOT = 0;
+
+    private RatioTable() {
+    }
+
+    /**
+     * Indices of the first size of every distinct ratio, sorted by ascending ratio.
+     */
+    static int[] distinctRatios(int[] widths, int[] heights) {
+        int count = widths.length;
+        int[] distinct = new int[count];
+        int distinctCount = 0;
+        long[] slots = null;
+
+        for (int i = 0; i < count; i++) {
+            if (widths[i] <= 0 || heights[i] <= 0) {
+                continue;
+            }
+            boolean added;
+            if (slots == null) {
+                added = !containsRatio(distinct, distinctCount, widths, heights, i);
+                if (added && distinctCount == LINEAR_SCAN_LIMIT) {
+                    slots = new long[tableSize(count)];
+                    for (int j = 0; j < distinctCount; j++) {
+                        addKey(slots, getKey(widths[distinct[j]], heights[distinct[j]]));
+                    }
+                    addKey(slots, getKey(widths[i], heights[i]));
+                }
+            } else {
+                added = addKey(slots, getKey(widths[i], heights[i]));
+            }
+            if (added) {
+                distinct[distinctCount++] = i;
+            }
+        }
+
+        int[] result = new int[distinctCount];
+        System.arraycopy(distinct, 0, result, 0, distinctCount);
+        sortByRatio(result, widths, heights);
+        return result;
+    }
+
+    /**
+     * Groups the sizes into buckets of ratios within the relative tolerance of the smallest ratio
+     * of the bucket, e.g. 0.01 for 1%. Returns the size indices of every bucket sorted by ascending
+     * area, the buckets sorted by ascending ratio. Zero tolerance only groups exactly equal ratios.
+     */
+    static int[][] bucketRatios(int[] widths, int[] heights, double tolerance) {
+        int[] distinct = distinctRatios(widths, heights);
+        int[] bucketOfDistinct = new int[distinct.length];
+        int bucketCount = 0;
+        double bucketStartRatio = 0;
+        for (int d = 0; d < distinct.length; d++) {
+            double ratio = (double) widths[distinct[d]] / heights[distinct[d]];
+            if (bucketCount == 0 || ratio > bucketStartRatio * (1 + tolerance)) {
+                bucketStartRatio = ratio;
+                bucketCount++;
+            }
+            bucketOfDistinct[d] = bucketCount - 1;
+        }
+
+        int[] bucketOfSize = new int[widths.length];
+        int[] bucketSizeCounts = new int[bucketCount];
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] <= 0 || heights[i] <= 0) {
+                bucketOfSize[i] = -1;
+                continue;
+            }
+            bucketOfSize[i] = bucketOfDistinct[findRatio(distinct, widths, heights, i)];
+            bucketSizeCounts[bucketOfSize[i]]++;
+        }
+
+        int[][] buckets = new int[bucketCount][];
+        for (int b = 0; b < bucketCount; b++) {
+            buckets[b] = new int[bucketSizeCounts[b]];
+            bucketSizeCounts[b] = 0;
+        }
+        for (int i = 0; i < widths.length; i++) {
+            if (bucketOfSize[i] >= 0) {
+                buckets[bucketOfSize[i]][bucketSizeCounts[bucketOfSize[i]]++] = i;
+            }
+        }
+        for (int[] bucket : buckets) {
+            sortByArea(bucket, widths, heights);
+        }
+        return buckets;
+    }
+
+    /**
+     * Compares {@code width1 / height1} with {@code width2 / height2} exactly.
+     */
+    static int compare(int width1, int height1, int width2, int height2) {
+        long left = (long) width1 * height2;
+        long right = (long) width2 * height1;
+        return left < right ? -1 : (left == right ? 0 : 1);
+    }
+
+    static int gcd(int a, int b) {
+        while (b != 0) {
+            int remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+
+    private static boolean containsRatio(int[] distinct, int distinctCount, int[] widths, int[] heights, int index) {
+        for (int j = 0; j < distinctCount; j++) {
+            if (compare(widths[distinct[j]], heights[distinct[j]], widths[index], heights[index]) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getKey(int width, int height) {
+        int gcd = gcd(width, height);
+        // both halves are positive, so the key is never the empty slot
+        return ((long) (width / gcd) << 32) | (height / gcd);
+    }
+
+    private static boolean addKey(long[] slots, long key) {
+        int mask = slots.length - 1;
+        int slot = mix(key) & mask;
+        while (slots[slot] != EMPTY_SLOT) {
+            if (slots[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = key;
+        return true;
+    }
+
+    private static int findRatio(int[] distinct, int[] widths, int[] heights, int index) {
+        // the distinct ratios are sorted, and every ratio of the table is among them
+        int low = 0;
+        int high = distinct.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(widths[distinct[middle]], heights[distinct[middle]], widths[index], heights[index]) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void sortByArea(int[] indices, int[] widths, int[] heights) {
+        for (int i = 1; i < indices.length; i++) {
+            int index = indices[i];
+            long area = (long) widths[index] * heights[index];
+            int j = i - 1;
+            while (j >= 0 && ((long) widths[indices[j]] * heights[indices[j]] > area
+                    || (long) widths[indices[j]] * heights[indices[j]] == area && widths[indices[j]] > widths[index])) {
+                indices[j + 1] = indices[j];
+                j--;
+            }
+            indices[j + 1] = index;
+        }
+    }
+
+    private static void sortByRatio(int[] indices, int[] widths, int[] heights) {
+        // stable insertion sort, a size table only has a handful of distinct ratios
+        for (int i = 1; i < indices.length; i++) {
+            int index = indices[i];
+            int j = i - 1;
+            while (j >= 0 && compare(widths[indices[j]], heights[indices[j]], widths[index], heights[index]) > 0) {
+                indices[j + 1] = indices[j];
+                j--;
+            }
+            indices[j + 1] = index;
+        }
+    }
+
+    private static int tableSize(int count) {
+        int size = 2;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
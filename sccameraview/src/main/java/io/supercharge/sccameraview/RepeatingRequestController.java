@@ -0,0 +1,202 @@
+package io.supercharge.sccameraview;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureRequest;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.util.Log;
+import android.util.Range;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Owns the repeating request of the preview session. Settings changed with
+ * {@link #set(CaptureRequest.Key, Object)} are collected and submitted with a single
+ * setRepeatingRequest call at most once per frame interval. Values equal to the current ones are
+ * dropped without rebuilding the request. The settings survive session changes and are applied
+ * to every newly attached session.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+class RepeatingRequestController {
+
+    private static final int DEFAULT_FPS = 30;
+
+    private final CameraThread cameraThread;
+    private final Map<CaptureRequest.Key<?>, Object> settings = new LinkedHashMap<>();
+    private final Map<CaptureRequest.Key<?>, Object> pendingSettings = new LinkedHashMap<>();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private CameraCaptureSession session;
+    private CaptureRequest.Builder builder;
+    private boolean submitScheduled;
+    private long frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / DEFAULT_FPS;
+    private long lastSubmitTime;
+
+    private final Runnable submitTask = new Runnable() {
+        @Override
+        public void run() {
+            submit();
+        }
+    };
+
+    RepeatingRequestController(CameraThread cameraThread) {
+        this.cameraThread = cameraThread;
+    }
+
+    /**
+     * Makes the builder the repeating request of the session, with all settings applied. Has to be
+     * called on the camera thread.
+     */
+    void attach(CameraCaptureSession session, CaptureRequest.Builder builder) {
+        synchronized (this) {
+            this.session = session;
+            this.builder = builder;
+            settings.putAll(pendingSettings);
+            pendingSettings.clear();
+            for (Map.Entry<CaptureRequest.Key<?>, Object> setting : settings.entrySet()) {
+                apply(builder, setting.getKey(), setting.getValue());
+            }
+            Range<Integer> fpsRange = builder.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE);
+            int fps = fpsRange != null && fpsRange.getUpper() > 0 ? fpsRange.getUpper() : DEFAULT_FPS;
+            frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / fps;
+        }
+        submit(session, builder.build());
+    }
+
+    synchronized void detach() {
+        session = null;
+        builder = null;
+    }
+
+    /**
+     * Changes a setting of the repeating request. Can be called from any thread.
+     */
+    <T> void set(CaptureRequest.Key<T> key, T value) {
+        long delayNanos;
+        synchronized (this) {
+            boolean known = pendingSettings.containsKey(key) || settings.containsKey(key);
+            if (known && valueEquals(get(key), value)) {
+                coalescedCount.incrementAndGet();
+                return;
+            }
+            pendingSettings.put(key, value);
+            if (submitScheduled || session == null) {
+                // rides along with the scheduled submit or the next attached session
+                coalescedCount.incrementAndGet();
+                return;
+            }
+            submitScheduled = true;
+            delayNanos = Math.max(0, lastSubmitTime + frameIntervalNanos - System.nanoTime());
+        }
+        cameraThread.postDelayed(submitTask, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+    }
+
+    /**
+     * Drops a setting, so the template default applies again from the next attached session on.
+     */
+    synchronized void reset(CaptureRequest.Key<?> key) {
+        settings.remove(key);
+        pendingSettings.remove(key);
+    }
+
+    /**
+     * Submits the pending settings right away and sends a single request with the trigger set on
+     * top of the repeating request, e.g. to start an auto focus scan.
+     */
+    void trigger(final CaptureRequest.Key<Integer> key, final int value, final int idleValue) {
+        cameraThread.post(new Runnable() {
+            @Override
+            public void run() {
+                submit();
+                CameraCaptureSession session;
+                CaptureRequest request;
+                synchronized (RepeatingRequestController.this) {
+                    if (RepeatingRequestController.this.session == null) {
+                        return;
+                    }
+                    session = RepeatingRequestController.this.session;
+                    builder.set(key, value);
+                    request = builder.build();
+                    builder.set(key, idleValue);
+                }
+                try {
+                    session.capture(request, null, cameraThread.getHandler());
+                } catch (CameraAccessException | IllegalStateException e) {
+                    Log.e(LOG_TAG, e.getMessage());
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(CaptureRequest.Key<T> key) {
+        return (T) (pendingSettings.containsKey(key) ? pendingSettings.get(key) : settings.get(key));
+    }
+
+    synchronized long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+    /**
+     * Number of setRepeatingRequest calls made.
+     */
+    long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Number of setting changes merged into another submit or dropped as unchanged.
+     */
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private void submit() {
+        CameraCaptureSession session;
+        CaptureRequest request;
+        synchronized (this) {
+            submitScheduled = false;
+            if (this.session == null || pendingSettings.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<CaptureRequest.Key<?>, Object> setting : pendingSettings.entrySet()) {
+                apply(builder, setting.getKey(), setting.getValue());
+            }
+            settings.putAll(pendingSettings);
+            pendingSettings.clear();
+            session = this.session;
+            request = builder.build();
+        }
+        submit(session, request);
+    }
+
+    private void submit(CameraCaptureSession session, CaptureRequest request) {
+        try {
+            session.setRepeatingRequest(request, null, cameraThread.getHandler());
+            submittedCount.incrementAndGet();
+            synchronized (this) {
+                lastSubmitTime = System.nanoTime();
+            }
+        } catch (CameraAccessException | IllegalStateException e) {
+            // the session was closed in the meantime, the next one gets the settings
+            Log.e(LOG_TAG, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void apply(CaptureRequest.Builder builder, CaptureRequest.Key<T> key, Object value) {
+        builder.set(key, (T) value);
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        // deepEquals compares arrays such as metering regions by content
+        return Arrays.deepEquals(new Object[]{a}, new Object[]{b});
+    }
+}
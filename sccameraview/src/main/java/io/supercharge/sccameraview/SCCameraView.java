@@ -29,6 +29,8 @@ public class SCCameraView extends FrameLayout {
             return;
         }
 
+        // fills the capability cache, so the aspect ratios are known before the first measure
+        CapabilitySnapshotStore.load(context);
         cameraView = BaseCameraView.createCameraView(context);
         cameraView.loadAspectRatios();
         this.addView(cameraView);
@@ -42,9 +44,19 @@ public class SCCameraView extends FrameLayout {
             if (width == 0 && height == 0) {
                 width = getMeasuredWidth();
                 height = getMeasuredHeight();
+                if (width == 0 || height == 0) {
+                    // ratios came from the capability snapshot, this is the very first measure
+                    width = MeasureSpec.getSize(widthMeasureSpec);
+                    height = MeasureSpec.getSize(heightMeasureSpec);
+                }
                 cameraView.setAspectRatioByScreenSize((double)height/width);
             }
-            aspectRatio = cameraView.getRatioSizeList().get(cameraView.getSelectedRatioIdx());
+            aspectRatio = cameraView.getSelectedRatio();
+            if (aspectRatio == null) {
+                // dropped meanwhile by a camera switch, measured again once they are loaded
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+                return;
+            }
             final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
             final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
             int measureWidth = Math.min(width, (int) (height / aspectRatio.getRatio()));
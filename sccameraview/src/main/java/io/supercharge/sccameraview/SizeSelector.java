@@ -0,0 +1,113 @@
+package io.supercharge.sccameraview;
+
+import java.util.List;
+
+/**
+ * Picks the output sizes for the selected aspect ratio, each from the size table of its own output
+ * class. The preview gets the smallest size covering the view, the still the largest size and the
+ * video the largest size the recorder profile allows. Sizes are compared in landscape, the way the
+ * camera reports them, so the view may be laid out in any orientation.
+ */
+final class SizeSelector {
+
+    static final int MAX_PREVIEW_WIDTH = 1920;
+    static final int MAX_PREVIEW_HEIGHT = 1080;
+
+    private SizeSelector() {
+    }
+
+    /**
+     * The aspect ratio of the table matching the target exactly, otherwise the closest one. Null for
+     * an empty table.
+     */
+    static AspectRatio findClosest(List<AspectRatio> aspectRatios, AspectRatio target) {
+        AspectRatio closest = null;
+        double closestDistance = Double.MAX_VALUE;
+        for (AspectRatio aspectRatio : aspectRatios) {
+            if (aspectRatio.getNumerator() == target.getNumerator()
+                    && aspectRatio.getDenominator() == target.getDenominator()) {
+                return aspectRatio;
+            }
+            double distance = Math.abs(aspectRatio.getRatio() - target.getRatio());
+            if (distance < closestDistance) {
+                closest = aspectRatio;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Index of the aspect ratio closest to the ratio, e.g. the one of the screen.
+     */
+    static int findClosestIndex(List<AspectRatio> aspectRatios, double ratio) {
+        double minDifference = Double.MAX_VALUE;
+        int minIdx = 0;
+        for (int i = 0; i < aspectRatios.size(); i++) {
+            double difference = Math.abs(aspectRatios.get(i).getRatio() - ratio);
+            if (difference < minDifference) {
+                minDifference = difference;
+                minIdx = i;
+            }
+        }
+        return minIdx;
+    }
+
+    /**
+     * Index of the smallest size covering the view, within the preview limit, of exactly the ratio
+     * if one covers it. Before the view is laid out the largest size within the limit is used.
+     */
+    static int choosePreviewSize(AspectRatio aspectRatio, int viewWidth, int viewHeight) {
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return chooseLargestSize(aspectRatio, MAX_PREVIEW_WIDTH, MAX_PREVIEW_HEIGHT);
+        }
+        int index = findCoveringSize(aspectRatio, viewWidth, viewHeight, true);
+        if (index < 0) {
+            index = findCoveringSize(aspectRatio, viewWidth, viewHeight, false);
+        }
+        return index >= 0 ? index : chooseLargestSize(aspectRatio, MAX_PREVIEW_WIDTH, MAX_PREVIEW_HEIGHT);
+    }
+
+    /**
+     * Index of the largest size within the bounds, zero bounds mean no limit. Sizes of exactly the
+     * ratio are preferred, e.g. 1920x1080 over 1920x1088 under 16:9. Falls back to the smallest
+     * size if none fits.
+     */
+    static int chooseLargestSize(AspectRatio aspectRatio, int maxWidth, int maxHeight) {
+        int index = findLargestSize(aspectRatio, maxWidth, maxHeight, true);
+        if (index < 0) {
+            index = findLargestSize(aspectRatio, maxWidth, maxHeight, false);
+        }
+        return Math.max(index, 0);
+    }
+
+    private static int findCoveringSize(AspectRatio aspectRatio, int viewWidth, int viewHeight, boolean exactOnly) {
+        int viewLong = Math.max(viewWidth, viewHeight);
+        int viewShort = Math.min(viewWidth, viewHeight);
+        // sizes are sorted by area, so the first covering size is the smallest one
+        for (int i = 0; i < aspectRatio.getSizeCount(); i++) {
+            int width = aspectRatio.getWidth(i);
+            int height = aspectRatio.getHeight(i);
+            if ((!exactOnly || aspectRatio.isExact(i)) && fits(width, height, MAX_PREVIEW_WIDTH, MAX_PREVIEW_HEIGHT)
+                    && Math.max(width, height) >= viewLong && Math.min(width, height) >= viewShort) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int findLargestSize(AspectRatio aspectRatio, int maxWidth, int maxHeight, boolean exactOnly) {
+        for (int i = aspectRatio.getSizeCount() - 1; i >= 0; i--) {
+            if ((!exactOnly || aspectRatio.isExact(i)) && (maxWidth <= 0 || maxHeight <= 0
+                    || fits(aspectRatio.getWidth(i), aspectRatio.getHeight(i), maxWidth, maxHeight))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean fits(int width, int height, int maxWidth, int maxHeight) {
+        return Math.max(width, height) <= Math.max(maxWidth, maxHeight)
+                && Math.min(width, height) <= Math.min(maxWidth, maxHeight);
+    }
+}
@@ -0,0 +1,64 @@
+package io.supercharge.sccameraview;
+
+/**
+ * What one video encoder of the device supports, as read from its MediaCodecInfo. The frame rate
+ * limit of a size is derived from the pixel rate the encoder reaches at its largest size, so a
+ * table of a few numbers per encoder describes it and can be recorded from a device.
+ */
+final class VideoEncoderCapabilities {
+
+    final String name;
+    final String mimeType;
+    final int maxWidth;
+    final int maxHeight;
+    final int widthAlignment;
+    final int heightAlignment;
+    final int minBitrate;
+    final int maxBitrate;
+    final int maxFrameRate;
+    final long maxPixelRate;
+
+    VideoEncoderCapabilities(String name, String mimeType, int maxWidth, int maxHeight, int widthAlignment,
+                             int heightAlignment, int minBitrate, int maxBitrate, int maxFrameRate,
+                             long maxPixelRate) {
+        this.name = name;
+        this.mimeType = mimeType;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.widthAlignment = Math.max(1, widthAlignment);
+        this.heightAlignment = Math.max(1, heightAlignment);
+        this.minBitrate = minBitrate;
+        this.maxBitrate = maxBitrate;
+        this.maxFrameRate = maxFrameRate;
+        this.maxPixelRate = maxPixelRate;
+    }
+
+    /**
+     * Sizes are accepted in either orientation, encoders report their limits in landscape.
+     */
+    boolean isSizeSupported(int width, int height) {
+        if (width % widthAlignment != 0 || height % heightAlignment != 0) {
+            return false;
+        }
+        return Math.max(width, height) <= Math.max(maxWidth, maxHeight)
+                && Math.min(width, height) <= Math.min(maxWidth, maxHeight);
+    }
+
+    int getMaxFrameRate(int width, int height) {
+        long pixels = (long) width * height;
+        if (pixels <= 0 || maxPixelRate <= 0) {
+            return maxFrameRate;
+        }
+        return (int) Math.min(maxFrameRate, maxPixelRate / pixels);
+    }
+
+    int clampBitrate(int bitrate) {
+        return Math.max(minBitrate, Math.min(maxBitrate, bitrate));
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + mimeType + " " + maxWidth + "x" + maxHeight + " " + minBitrate + "-" + maxBitrate
+                + "bps " + maxFrameRate + "fps";
+    }
+}
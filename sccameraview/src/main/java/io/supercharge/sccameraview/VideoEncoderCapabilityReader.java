@@ -0,0 +1,80 @@
+package io.supercharge.sccameraview;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+import android.util.Range;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.supercharge.sccameraview.BaseCameraView.LOG_TAG;
+
+/**
+ * Reads the {@link VideoEncoderCapabilities} of the encoders the recorder can use, once per
+ * process. Encoders cannot be queried before Lollipop, and HEVC cannot be recorded before Nougat.
+ */
+final class VideoEncoderCapabilityReader {
+
+    private static volatile List<VideoEncoderCapabilities> encoders;
+
+    private VideoEncoderCapabilityReader() {
+    }
+
+    static List<VideoEncoderCapabilities> getEncoders() {
+        List<VideoEncoderCapabilities> result = encoders;
+        if (result == null) {
+            result = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                    ? Collections.unmodifiableList(readEncoders())
+                    : Collections.<VideoEncoderCapabilities>emptyList();
+            encoders = result;
+        }
+        return result;
+    }
+
+    @SuppressWarnings("checkstyle:illegalcatch")
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static List<VideoEncoderCapabilities> readEncoders() {
+        List<VideoEncoderCapabilities> result = new ArrayList<>();
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (!isRecordable(type)) {
+                    continue;
+                }
+                try {
+                    result.add(read(info.getName(), type, info.getCapabilitiesForType(type).getVideoCapabilities()));
+                } catch (RuntimeException e) {
+                    // some vendor codecs fail to report their capabilities
+                    Log.d(LOG_TAG, "Cannot read the capabilities of " + info.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static VideoEncoderCapabilities read(String name, String type,
+                                                 MediaCodecInfo.VideoCapabilities capabilities) {
+        int maxWidth = capabilities.getSupportedWidths().getUpper();
+        int maxHeight = capabilities.getSupportedHeightsFor(maxWidth).getUpper();
+        Range<Integer> bitrates = capabilities.getBitrateRange();
+        Range<Double> frameRatesAtMaxSize = capabilities.getSupportedFrameRatesFor(maxWidth, maxHeight);
+        return new VideoEncoderCapabilities(name, type, maxWidth, maxHeight, capabilities.getWidthAlignment(),
+                capabilities.getHeightAlignment(), bitrates.getLower(), bitrates.getUpper(),
+                capabilities.getSupportedFrameRates().getUpper(),
+                (long) (frameRatesAtMaxSize.getUpper() * maxWidth * maxHeight));
+    }
+
+    private static boolean isRecordable(String type) {
+        if (VideoEncoderConfig.CODEC_HEVC.equalsIgnoreCase(type)) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+        }
+        return VideoEncoderConfig.CODEC_H264.equalsIgnoreCase(type);
+    }
+}
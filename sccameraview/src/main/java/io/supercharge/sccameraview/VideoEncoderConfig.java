@@ -0,0 +1,97 @@
+package io.supercharge.sccameraview;
+
+/**
+ * How recordings are encoded. By default the bitrate follows the resolution, frame rate and codec
+ * of the recording, instead of one fixed rate that starves 4K and bloats small sizes. The chosen
+ * settings are checked against what the device encoders support and clamped to it. Instances are
+ * immutable, the {@code with} methods return changed copies.
+ */
+public final class VideoEncoderConfig {
+
+    public static final String CODEC_H264 = "video/avc";
+    public static final String CODEC_HEVC = "video/hevc";
+
+    /**
+     * Bits per pixel and frame of H.264 camera footage, about 7.5 Mbps at 1080p and 30 fps.
+     */
+    public static final float DEFAULT_BITS_PER_PIXEL = 0.12f;
+
+    private static final VideoEncoderConfig DEFAULT =
+            new VideoEncoderConfig(CODEC_H264, 0, DEFAULT_BITS_PER_PIXEL, 0, 0);
+
+    private final String codec;
+    private final int frameRate;
+    private final float bitsPerPixel;
+    private final int bitrate;
+    private final int maxBitrate;
+
+    private VideoEncoderConfig(String codec, int frameRate, float bitsPerPixel, int bitrate, int maxBitrate) {
+        this.codec = codec;
+        this.frameRate = frameRate;
+        this.bitsPerPixel = bitsPerPixel;
+        this.bitrate = bitrate;
+        this.maxBitrate = maxBitrate;
+    }
+
+    /**
+     * H.264 at the frame rate of the recorder profile, with the bitrate derived from the size.
+     */
+    public static VideoEncoderConfig adaptive() {
+        return DEFAULT;
+    }
+
+    /**
+     * The preferred codec, H.264 is used where no encoder of it can record the size.
+     */
+    public VideoEncoderConfig withCodec(String codec) {
+        return new VideoEncoderConfig(codec, frameRate, bitsPerPixel, bitrate, maxBitrate);
+    }
+
+    /**
+     * Zero keeps the frame rate of the recorder profile.
+     */
+    public VideoEncoderConfig withFrameRate(int frameRate) {
+        return new VideoEncoderConfig(codec, frameRate, bitsPerPixel, bitrate, maxBitrate);
+    }
+
+    /**
+     * The H.264 quality of the derived bitrate, more efficient codecs get proportionally less.
+     */
+    public VideoEncoderConfig withBitsPerPixel(float bitsPerPixel) {
+        return new VideoEncoderConfig(codec, frameRate, bitsPerPixel, bitrate, maxBitrate);
+    }
+
+    /**
+     * A fixed bitrate instead of the derived one, zero derives it again.
+     */
+    public VideoEncoderConfig withBitrate(int bitrate) {
+        return new VideoEncoderConfig(codec, frameRate, bitsPerPixel, bitrate, maxBitrate);
+    }
+
+    /**
+     * Upper bound of the bitrate, e.g. to keep uploads small. Zero means no bound.
+     */
+    public VideoEncoderConfig withMaxBitrate(int maxBitrate) {
+        return new VideoEncoderConfig(codec, frameRate, bitsPerPixel, bitrate, maxBitrate);
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public float getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public int getMaxBitrate() {
+        return maxBitrate;
+    }
+}
@@ -0,0 +1,120 @@
+package io.supercharge.sccameraview;
+
+import java.util.List;
+
+/**
+ * Turns a {@link VideoEncoderConfig} into the settings of one recording. The preferred codec is
+ * used if one of its encoders can record the size, otherwise H.264. The frame rate and the
+ * bitrate are clamped to that encoder. If none reports the size, only the bitrate is clamped, to
+ * the first H.264 encoder. Without any H.264 encoder in the table, e.g. before Lollipop where
+ * encoders cannot be queried, the settings are used as derived. The video size is picked from
+ * the same table, the largest one an encoder records at the frame rate.
+ */
+final class VideoEncoderSelector {
+
+    // HEVC reaches the quality of H.264 at roughly 60 percent of its bitrate
+    static final float HEVC_BITRATE_FACTOR = 0.6f;
+    private static final int BITRATE_STEP = 1000;
+
+    private VideoEncoderSelector() {
+    }
+
+    static VideoEncoderSettings select(VideoEncoderConfig config, int width, int height, int defaultFrameRate,
+                                       List<VideoEncoderCapabilities> encoders) {
+        String mimeType = config.getCodec();
+        VideoEncoderCapabilities encoder = findEncoder(encoders, mimeType, width, height);
+        if (encoder == null && !VideoEncoderConfig.CODEC_H264.equals(mimeType)) {
+            mimeType = VideoEncoderConfig.CODEC_H264;
+            encoder = findEncoder(encoders, mimeType, width, height);
+        }
+        boolean sizeSupported = encoder != null;
+        if (!sizeSupported) {
+            // the camera offers the size for recording, the encoder may just report it too strictly
+            encoder = findEncoder(encoders, mimeType, 0, 0);
+        }
+
+        int frameRate = config.getFrameRate() > 0 ? config.getFrameRate() : defaultFrameRate;
+        if (sizeSupported) {
+            frameRate = Math.min(frameRate, encoder.getMaxFrameRate(width, height));
+        }
+        frameRate = Math.max(1, frameRate);
+
+        int bitrate = config.getBitrate() > 0 ? config.getBitrate()
+                : estimateBitrate(mimeType, width, height, frameRate, config.getBitsPerPixel());
+        if (config.getMaxBitrate() > 0) {
+            bitrate = Math.min(bitrate, config.getMaxBitrate());
+        }
+        if (encoder != null) {
+            bitrate = encoder.clampBitrate(bitrate);
+        }
+        return new VideoEncoderSettings(mimeType, encoder != null ? encoder.name : null, width, height, frameRate,
+                bitrate);
+    }
+
+    /**
+     * The index of the largest size of the ratio that an encoder of the preferred codec, or else
+     * of H.264, records at the frame rate. Sizes of exactly the ratio are preferred. -1 if no
+     * encoder records any of the sizes, e.g. with an empty table, the recorder profile decides then.
+     */
+    static int chooseVideoSize(VideoEncoderConfig config, AspectRatio aspectRatio, int defaultFrameRate,
+                               List<VideoEncoderCapabilities> encoders) {
+        int frameRate = config.getFrameRate() > 0 ? config.getFrameRate() : defaultFrameRate;
+        int index = findLargestRecordableSize(encoders, config.getCodec(), aspectRatio, frameRate);
+        if (index < 0 && !VideoEncoderConfig.CODEC_H264.equals(config.getCodec())) {
+            index = findLargestRecordableSize(encoders, VideoEncoderConfig.CODEC_H264, aspectRatio, frameRate);
+        }
+        return index;
+    }
+
+    static int estimateBitrate(String mimeType, int width, int height, int frameRate, float bitsPerPixel) {
+        double bitrate = (double) width * height * frameRate * bitsPerPixel;
+        if (VideoEncoderConfig.CODEC_HEVC.equals(mimeType)) {
+            bitrate *= HEVC_BITRATE_FACTOR;
+        }
+        // whole kilobits, the float quality factor is not that precise anyway
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(bitrate / BITRATE_STEP) * BITRATE_STEP);
+    }
+
+    private static int findLargestRecordableSize(List<VideoEncoderCapabilities> encoders, String mimeType,
+                                                 AspectRatio aspectRatio, int frameRate) {
+        int inexact = -1;
+        for (int i = aspectRatio.getSizeCount() - 1; i >= 0; i--) {
+            if (!isRecordable(encoders, mimeType, aspectRatio.getWidth(i), aspectRatio.getHeight(i), frameRate)) {
+                continue;
+            }
+            if (aspectRatio.isExact(i)) {
+                return i;
+            }
+            if (inexact < 0) {
+                inexact = i;
+            }
+        }
+        return inexact;
+    }
+
+    private static boolean isRecordable(List<VideoEncoderCapabilities> encoders, String mimeType, int width,
+                                        int height, int frameRate) {
+        for (VideoEncoderCapabilities encoder : encoders) {
+            if (encoder.mimeType.equalsIgnoreCase(mimeType) && encoder.isSizeSupported(width, height)
+                    && encoder.getMaxFrameRate(width, height) >= frameRate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The first encoder of the type able to record the size, the device lists hardware encoders
+     * first. A zero size matches any encoder of the type.
+     */
+    private static VideoEncoderCapabilities findEncoder(List<VideoEncoderCapabilities> encoders, String mimeType,
+                                                        int width, int height) {
+        for (VideoEncoderCapabilities encoder : encoders) {
+            if (encoder.mimeType.equalsIgnoreCase(mimeType)
+                    && (width == 0 || encoder.isSizeSupported(width, height))) {
+                return encoder;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package io.supercharge.sccameraview;
+
+/**
+ * The encoder settings chosen for one recording.
+ */
+final class VideoEncoderSettings {
+
+    final String mimeType;
+    final String encoderName;
+    final int width;
+    final int height;
+    final int frameRate;
+    final int bitrate;
+
+    VideoEncoderSettings(String mimeType, String encoderName, int width, int height, int frameRate, int bitrate) {
+        this.mimeType = mimeType;
+        this.encoderName = encoderName;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.bitrate = bitrate;
+    }
+
+    @Override
+    public String toString() {
+        return mimeType + " " + width + "x" + height + "@" + frameRate + " " + bitrate + "bps"
+                + (encoderName != null ? " on " + encoderName : "");
+    }
+}
@@ -0,0 +1,56 @@
+package io.supercharge.sccameraview;
+
+import android.media.Image;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+final class YuvConverter {
+
+    private YuvConverter() {
+    }
+
+    static int getNv21Length(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * Copies a YUV_420_888 image into {@code out} in NV21 layout, honouring the row and pixel
+     * strides of every plane.
+     */
+    static void toNv21(Image image, byte[] out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+        int chromaOffset = width * height;
+
+        copyPlane(planes[0], width, height, out, 0, 1);
+        copyPlane(planes[2], width / 2, height / 2, out, chromaOffset, 2);
+        copyPlane(planes[1], width / 2, height / 2, out, chromaOffset + 1, 2);
+    }
+
+    private static void copyPlane(Image.Plane plane, int width, int height, byte[] out, int offset,
+                                  int outPixelStride) {
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+
+        if (pixelStride == 1 && outPixelStride == 1) {
+            for (int row = 0; row < height; row++) {
+                buffer.position(row * rowStride);
+                buffer.get(out, offset + row * width, width);
+            }
+            return;
+        }
+
+        for (int row = 0; row < height; row++) {
+            int inRowOffset = row * rowStride;
+            int outRowOffset = offset + row * width * outPixelStride;
+            for (int col = 0; col < width; col++) {
+                out[outRowOffset + col * outPixelStride] = buffer.get(inRowOffset + col * pixelStride);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.supercharge.sccameraview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BackendCameraControllerTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private FakeCameraBackend backend;
+    private BackendCameraController controller;
+    private CameraStateMachine stateMachine;
+    private final BlockingQueue<CameraState> states = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ByteBuffer> pictures = new LinkedBlockingQueue<>();
+    private final List<CameraStage> stages = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        backend = new FakeCameraBackend();
+        backend.addCamera("0");
+        backend.addCamera("1");
+        controller = new BackendCameraController(backend);
+        controller.setPictureListener(new BackendCameraController.PictureListener() {
+            @Override
+            public void onPictureTaken(ByteBuffer jpeg, Runnable releaseCallback) {
+                pictures.add(jpeg);
+            }
+        });
+        controller.setMetricsListener(new CameraMetricsListener() {
+            @Override
+            public void onCameraEvent(CameraEvent event) {
+                synchronized (stages) {
+                    stages.add(event.getStage());
+                }
+            }
+        });
+        stateMachine = controller.getStateMachine();
+        stateMachine.setListener(new CameraStateMachine.Listener() {
+            @Override
+            public void onStateChanged(CameraState state) {
+                states.add(state);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Test
+    public void opensStreamsCapturesAndCloses() throws InterruptedException {
+        stateMachine.requestOpen();
+        expectStates(CameraState.OPENING, CameraState.OPEN, CameraState.CONFIGURING, CameraState.STREAMING);
+
+        controller.takePicture();
+        ByteBuffer jpeg = pictures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(jpeg);
+        assertEquals((byte) 0xFF, jpeg.get(0));
+        assertEquals((byte) 0xD8, jpeg.get(1));
+
+        stateMachine.requestClose();
+        expectStates(CameraState.CLOSING, CameraState.CLOSED);
+        assertEquals(1, backend.getPictureCount());
+        synchronized (stages) {
+            assertTrue(stages.containsAll(Arrays.asList(CameraStage.CAMERA_OPENED, CameraStage.SESSION_CONFIGURED,
+                    CameraStage.CAPTURE_COMPLETED, CameraStage.IMAGE_AVAILABLE)));
+        }
+    }
+
+    @Test
+    public void ignoresPicturesWhileClosed() throws InterruptedException {
+        controller.takePicture();
+        assertNull(pictures.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, backend.getPictureCount());
+    }
+
+    @Test
+    public void recordsWhileStreaming() throws InterruptedException {
+        stateMachine.requestOpen();
+        expectStates(CameraState.OPENING, CameraState.OPEN, CameraState.CONFIGURING, CameraState.STREAMING);
+
+        controller.startRecording();
+        awaitRecording(true);
+        controller.stopRecording();
+        awaitRecording(false);
+
+        controller.startRecording();
+        awaitRecording(true);
+        stateMachine.requestClose();
+        expectStates(CameraState.CLOSING, CameraState.CLOSED);
+        assertFalse(controller.isRecording());
+        synchronized (stages) {
+            assertTrue(stages.contains(CameraStage.RECORDING_STARTED));
+        }
+    }
+
+    @Test
+    public void closesAfterFailedOpen() throws InterruptedException {
+        backend.failNextOpen();
+        stateMachine.requestOpen();
+        expectStates(CameraState.OPENING, CameraState.CLOSING, CameraState.CLOSED);
+
+        stateMachine.requestOpen();
+        expectStates(CameraState.OPENING, CameraState.OPEN, CameraState.CONFIGURING, CameraState.STREAMING);
+    }
+
+    @Test
+    public void closesAfterFailedConfigure() throws InterruptedException {
+        backend.failNextConfigure();
+        stateMachine.requestOpen();
+        expectStates(CameraState.OPENING, CameraState.OPEN, CameraState.CONFIGURING, CameraState.CLOSING,
+                CameraState.CLOSED);
+    }
+
+    @Test
+    public void reopensAnotherCamera() throws InterruptedException {
+        stateMachine.requestOpen();
+        expectStates(CameraState.OPENING, CameraState.OPEN, CameraState.CONFIGURING, CameraState.STREAMING);
+
+        backend.selectCamera("1");
+        stateMachine.requestReopen();
+        expectStates(CameraState.CLOSING, CameraState.CLOSED, CameraState.OPENING, CameraState.OPEN,
+                CameraState.CONFIGURING, CameraState.STREAMING);
+    }
+
+    private void expectStates(CameraState... expected) throws InterruptedException {
+        for (CameraState state : expected) {
+            assertEquals(state, states.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    private void awaitRecording(boolean recording) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (controller.isRecording() != recording && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(recording, controller.isRecording());
+    }
+}
@@ -0,0 +1,323 @@
+package io.supercharge.sccameraview;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A scripted in-memory {@link CameraBackend}. Opening, configuring, capturing and closing complete
+ * after configurable latencies, the preview produces synthetic NV21 frames at a fixed rate and the
+ * pictures are synthetic JPEGs of a realistic length. The preview size is picked from the size
+ * table of the camera with {@link SizeSelector}, the way the views pick it before they are laid
+ * out. Failures are scripted with {@link #failNextOpen()} and {@link #failNextConfigure()}.
+ * Nothing touches the hardware, so the camera of the views runs on a plain JVM.
+ */
+final class FakeCameraBackend implements CameraBackend {
+
+    static final int DEFAULT_FPS = 30;
+    static final int[][] DEFAULT_PREVIEW_SIZES = {
+            {1920, 1440, 1280, 1088, 960, 720, 640, 352, 320, 176},
+            {1080, 1080, 720, 1088, 720, 480, 480, 288, 240, 144}};
+    static final double DEFAULT_ASPECT_RATIO = 16.0 / 9;
+
+    // a JPEG of a camera scene is roughly a tenth of the pixel count in bytes
+    private static final int JPEG_BYTES_PER_PIXEL_DIVISOR = 10;
+    private static final int MIN_JPEG_LENGTH = 64;
+
+    private final ScheduledExecutorService executor;
+    private final Map<String, List<AspectRatio>> cameras = new LinkedHashMap<>();
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong pictureCount = new AtomicLong();
+
+    private volatile String selectedCameraId;
+    private volatile double aspectRatio = DEFAULT_ASPECT_RATIO;
+    private volatile long openLatencyMillis;
+    private volatile long configureLatencyMillis;
+    private volatile long closeLatencyMillis;
+    private volatile long captureLatencyMillis;
+    private volatile int frameRate = DEFAULT_FPS;
+    private volatile boolean failNextOpen;
+    private volatile boolean failNextConfigure;
+
+    // touched on the camera thread only
+    private Callback callback;
+    private String openCameraId;
+    private int generation;
+    private ScheduledFuture<?> previewTask;
+    private byte[] frame;
+    private int previewWidth;
+    private int previewHeight;
+    private boolean recording;
+
+    FakeCameraBackend() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "FakeCameraBackend");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds a camera with the default size table.
+     */
+    void addCamera(String cameraId) {
+        addCamera(cameraId, DEFAULT_PREVIEW_SIZES);
+    }
+
+    /**
+     * Adds a camera, its preview sizes given as {widths, heights}. The first camera added is
+     * selected.
+     */
+    synchronized void addCamera(String cameraId, int[][] previewSizes) {
+        cameras.put(cameraId, AspectRatio.fromSizes(previewSizes[0], previewSizes[1],
+                CameraCapabilityCache.DEFAULT_RATIO_TOLERANCE));
+        if (selectedCameraId == null) {
+            selectedCameraId = cameraId;
+        }
+    }
+
+    /**
+     * The camera the next open opens.
+     */
+    void selectCamera(String cameraId) {
+        selectedCameraId = cameraId;
+    }
+
+    /**
+     * The preview is configured with the aspect ratio of the table closest to this one, applies to
+     * the next configuration.
+     */
+    void setAspectRatio(double aspectRatio) {
+        this.aspectRatio = aspectRatio;
+    }
+
+    void setOpenLatencyMillis(long openLatencyMillis) {
+        this.openLatencyMillis = openLatencyMillis;
+    }
+
+    void setConfigureLatencyMillis(long configureLatencyMillis) {
+        this.configureLatencyMillis = configureLatencyMillis;
+    }
+
+    void setCloseLatencyMillis(long closeLatencyMillis) {
+        this.closeLatencyMillis = closeLatencyMillis;
+    }
+
+    void setCaptureLatencyMillis(long captureLatencyMillis) {
+        this.captureLatencyMillis = captureLatencyMillis;
+    }
+
+    /**
+     * Preview frames per second, applies to the next configuration.
+     */
+    void setFrameRate(int frameRate) {
+        this.frameRate = Math.max(1, frameRate);
+    }
+
+    /**
+     * The next open reports an error instead of opening the camera.
+     */
+    void failNextOpen() {
+        failNextOpen = true;
+    }
+
+    /**
+     * The next configuration reports an error instead of starting the preview.
+     */
+    void failNextConfigure() {
+        failNextConfigure = true;
+    }
+
+    long getFrameCount() {
+        return frameCount.get();
+    }
+
+    long getPictureCount() {
+        return pictureCount.get();
+    }
+
+    /**
+     * Stops the camera thread, the backend cannot be used afterwards.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void open(final Callback callback) {
+        this.callback = callback;
+        final String cameraId = selectedCameraId;
+        schedule(openLatencyMillis, ++generation, new Runnable() {
+            @Override
+            public void run() {
+                if (failNextOpen || getSizes(cameraId) == null) {
+                    failNextOpen = false;
+                    callback.onError();
+                    return;
+                }
+                openCameraId = cameraId;
+                callback.onOpened();
+            }
+        });
+    }
+
+    @Override
+    public void configure() {
+        schedule(configureLatencyMillis, generation, new Runnable() {
+            @Override
+            public void run() {
+                stopPreview();
+                List<AspectRatio> aspectRatios = openCameraId != null ? getSizes(openCameraId) : null;
+                if (aspectRatios == null || aspectRatios.isEmpty() || failNextConfigure) {
+                    failNextConfigure = false;
+                    callback.onError();
+                    return;
+                }
+                AspectRatio selected = aspectRatios.get(SizeSelector.findClosestIndex(aspectRatios, aspectRatio));
+                int index = SizeSelector.choosePreviewSize(selected, 0, 0);
+                startPreview(selected.getWidth(index), selected.getHeight(index));
+                callback.onConfigured();
+            }
+        });
+    }
+
+    @Override
+    public void takePicture() {
+        schedule(captureLatencyMillis, generation, new Runnable() {
+            @Override
+            public void run() {
+                if (previewTask == null) {
+                    return;
+                }
+                pictureCount.incrementAndGet();
+                callback.onCaptureCompleted();
+                callback.onPictureTaken(ByteBuffer.wrap(createJpeg(previewWidth, previewHeight)), null);
+            }
+        });
+    }
+
+    @Override
+    public void startRecording() {
+        if (previewTask == null || recording) {
+            return;
+        }
+        recording = true;
+        callback.onRecordingStarted();
+    }
+
+    @Override
+    public void stopRecording() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        callback.onRecordingStopped();
+    }
+
+    @Override
+    public void close() {
+        // drops the open, configure and capture still pending
+        final int closeGeneration = ++generation;
+        final Callback closingCallback = callback;
+        stopPreview();
+        recording = false;
+        openCameraId = null;
+        schedule(closeLatencyMillis, closeGeneration, new Runnable() {
+            @Override
+            public void run() {
+                callback = null;
+                if (closingCallback != null) {
+                    closingCallback.onClosed();
+                }
+            }
+        });
+    }
+
+    private synchronized List<AspectRatio> getSizes(String cameraId) {
+        return cameras.get(cameraId);
+    }
+
+    private void schedule(long delayMillis, final int taskGeneration, final Runnable task) {
+        Runnable guarded = new Runnable() {
+            @Override
+            public void run() {
+                if (taskGeneration == generation && callback != null) {
+                    task.run();
+                }
+            }
+        };
+        if (delayMillis > 0) {
+            executor.schedule(guarded, delayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            guarded.run();
+        }
+    }
+
+    private void startPreview(int width, int height) {
+        if (frame == null || previewWidth != width || previewHeight != height) {
+            // drawn once per size, so reconfiguring costs the backend next to nothing
+            previewWidth = width;
+            previewHeight = height;
+            frame = new byte[width * height * 3 / 2];
+            for (int i = 0; i < width * height; i++) {
+                // a horizontal luma gradient, the chroma stays neutral
+                frame[i] = (byte) (i % width * 255 / width);
+            }
+            for (int i = width * height; i < frame.length; i++) {
+                frame[i] = (byte) 128;
+            }
+        }
+        previewTask = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (callback == null) {
+                    return;
+                }
+                long frameNumber = frameCount.incrementAndGet();
+                // the first bytes carry the frame number, so consumers can tell the frames apart
+                for (int i = 0; i < 8; i++) {
+                    frame[i] = (byte) (frameNumber >>> (i * 8));
+                }
+                callback.onPreviewFrame(frame, previewWidth, previewHeight, System.nanoTime());
+            }
+        }, 0, TimeUnit.SECONDS.toNanos(1) / frameRate, TimeUnit.NANOSECONDS);
+    }
+
+    private void stopPreview() {
+        if (previewTask != null) {
+            previewTask.cancel(false);
+            previewTask = null;
+        }
+    }
+
+    /**
+     * A JPEG container with start and end of image markers around a filler payload.
+     */
+    static byte[] createJpeg(int width, int height) {
+        byte[] jpeg = new byte[Math.max(MIN_JPEG_LENGTH, width * height / JPEG_BYTES_PER_PIXEL_DIVISOR)];
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        for (int i = 2; i < jpeg.length - 2; i++) {
+            jpeg[i] = (byte) i;
+        }
+        jpeg[jpeg.length - 2] = (byte) 0xFF;
+        jpeg[jpeg.length - 1] = (byte) 0xD9;
+        return jpeg;
+    }
+}
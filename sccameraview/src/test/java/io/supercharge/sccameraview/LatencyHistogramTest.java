@@ -0,0 +1,120 @@
+package io.supercharge.sccameraview;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsSmallValuesLinearly() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.getBucketIndex(value));
+            assertEquals(value, LatencyHistogram.getBucketUpperBound((int) value));
+        }
+    }
+
+    @Test
+    public void bucketsLargeValuesLogLinearly() {
+        long[][] cases = {
+                // value, bucket index, upper bound of the bucket
+                {64, 64, 65},
+                {65, 64, 65},
+                {66, 65, 67},
+                {127, 95, 127},
+                {128, 96, 131},
+                {Long.MAX_VALUE, 1887, Long.MAX_VALUE},
+        };
+        for (long[] c : cases) {
+            int index = LatencyHistogram.getBucketIndex(c[0]);
+            assertEquals("index of " + c[0], c[1], index);
+            assertEquals("upper bound of " + c[0], c[2], LatencyHistogram.getBucketUpperBound(index));
+        }
+    }
+
+    @Test
+    public void upperBoundsAreContiguous() {
+        int last = LatencyHistogram.getBucketIndex(Long.MAX_VALUE);
+        for (int i = 0; i < last; i++) {
+            long upperBound = LatencyHistogram.getBucketUpperBound(i);
+            assertEquals("bucket " + i, i, LatencyHistogram.getBucketIndex(upperBound));
+            assertEquals("bucket " + i, i + 1, LatencyHistogram.getBucketIndex(upperBound + 1));
+        }
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMaxNanos());
+        assertEquals(50, histogram.getPercentileNanos(50));
+        assertEquals(99, histogram.getPercentileNanos(99));
+        // the upper bound of the last bucket is capped at the largest value
+        assertEquals(100, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void reportsPercentilesWithinBucketPrecision() {
+        long typical = TimeUnit.MILLISECONDS.toNanos(1);
+        long outlier = TimeUnit.MILLISECONDS.toNanos(50);
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(typical);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(outlier);
+        }
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue("p50 " + p50, p50 >= typical && p50 <= typical * 103 / 100);
+        assertEquals(p50, histogram.getPercentileNanos(99));
+        assertEquals(outlier, histogram.getPercentileNanos(99.5));
+    }
+
+    @Test
+    public void recordsNegativeValuesAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void resets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(50));
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        histogram.record(10);
+        assertEquals(10, histogram.getPercentileNanos(99));
+    }
+
+    @Test
+    public void aggregatesPerStage() {
+        CameraMetricsAggregator aggregator = new CameraMetricsAggregator();
+        for (long duration = 1; duration <= 100; duration++) {
+            aggregator.onCameraEvent(new CameraEvent(CameraStage.CAMERA_OPENED, 0, duration));
+        }
+        aggregator.onCameraEvent(new CameraEvent(CameraStage.FILE_WRITTEN, 0, 7));
+
+        LatencyHistogram opened = aggregator.getHistogram(CameraStage.CAMERA_OPENED);
+        assertEquals(100, opened.getCount());
+        assertEquals(50, opened.getPercentileNanos(50));
+        assertEquals(99, opened.getPercentileNanos(99));
+        assertEquals(1, aggregator.getHistogram(CameraStage.FILE_WRITTEN).getCount());
+        assertEquals(0, aggregator.getHistogram(CameraStage.SESSION_CONFIGURED).getCount());
+
+        aggregator.reset();
+        for (CameraStage stage : CameraStage.values()) {
+            assertEquals(stage.name(), 0, aggregator.getHistogram(stage).getCount());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.supercharge.sccameraview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class VideoEncoderSelectorTest {
+
+    private static final int PROFILE_FRAME_RATE = 30;
+
+    // encoder tables as read by VideoEncoderCapabilityReader on the devices
+    private static final List<VideoEncoderCapabilities> NEXUS_5 = Arrays.asList(
+            new VideoEncoderCapabilities("OMX.qcom.video.encoder.avc", VideoEncoderConfig.CODEC_H264, 1920, 1088,
+                    2, 2, 64000, 20000000, 120, 1920L * 1088 * 30),
+            new VideoEncoderCapabilities("OMX.google.h264.encoder", VideoEncoderConfig.CODEC_H264, 2048, 2048,
+                    2, 2, 1, 12000000, 960, 1280L * 720 * 30));
+    private static final List<VideoEncoderCapabilities> PIXEL_3 = Arrays.asList(
+            new VideoEncoderCapabilities("OMX.qcom.video.encoder.avc", VideoEncoderConfig.CODEC_H264, 4096, 2176,
+                    2, 2, 1, 100000000, 240, 4096L * 2176 * 30),
+            new VideoEncoderCapabilities("OMX.qcom.video.encoder.hevc", VideoEncoderConfig.CODEC_HEVC, 4096, 2176,
+                    2, 2, 1, 100000000, 240, 4096L * 2176 * 30),
+            new VideoEncoderCapabilities("c2.android.avc.encoder", VideoEncoderConfig.CODEC_H264, 2048, 2048,
+                    2, 2, 1, 12000000, 960, 1920L * 1088 * 30));
+    private static final List<VideoEncoderCapabilities> NONE = Collections.emptyList();
+
+    private static final VideoEncoderConfig ADAPTIVE = VideoEncoderConfig.adaptive();
+    private static final VideoEncoderConfig HEVC = ADAPTIVE.withCodec(VideoEncoderConfig.CODEC_HEVC);
+
+    // the 16:9 video sizes of a back camera, 1920x1088 is only within the tolerance
+    private static final AspectRatio VIDEO_RATIO = new AspectRatio(16, 9,
+            new int[]{1280, 1920, 1920, 3840}, new int[]{720, 1080, 1088, 2160});
+
+    @Test
+    public void selectsSettings() {
+        Object[][] cases = {
+                // name, encoders, config, width, height, codec, encoder, frame rate, bitrate
+                {"1080p", NEXUS_5, ADAPTIVE, 1920, 1080,
+                        VideoEncoderConfig.CODEC_H264, "OMX.qcom.video.encoder.avc", 30, 7465000},
+                {"HEVC without encoder", NEXUS_5, HEVC, 1920, 1080,
+                        VideoEncoderConfig.CODEC_H264, "OMX.qcom.video.encoder.avc", 30, 7465000},
+                {"HEVC", PIXEL_3, HEVC, 1920, 1080,
+                        VideoEncoderConfig.CODEC_HEVC, "OMX.qcom.video.encoder.hevc", 30, 4479000},
+                {"size above every encoder", NEXUS_5, ADAPTIVE, 3840, 2160,
+                        VideoEncoderConfig.CODEC_H264, "OMX.qcom.video.encoder.avc", 30, 20000000},
+                {"frame rate above the pixel rate", PIXEL_3, ADAPTIVE.withFrameRate(60), 3840, 2160,
+                        VideoEncoderConfig.CODEC_H264, "OMX.qcom.video.encoder.avc", 32, 31850000},
+                {"empty table", NONE, ADAPTIVE, 1920, 1080,
+                        VideoEncoderConfig.CODEC_H264, null, 30, 7465000},
+                {"fixed bitrate", NEXUS_5, ADAPTIVE.withBitrate(50000000), 1280, 720,
+                        VideoEncoderConfig.CODEC_H264, "OMX.qcom.video.encoder.avc", 30, 20000000},
+                {"max bitrate", PIXEL_3, ADAPTIVE.withMaxBitrate(5000000), 1920, 1080,
+                        VideoEncoderConfig.CODEC_H264, "OMX.qcom.video.encoder.avc", 30, 5000000},
+        };
+        for (Object[] c : cases) {
+            String name = (String) c[0];
+            @SuppressWarnings("unchecked")
+            List<VideoEncoderCapabilities> encoders = (List<VideoEncoderCapabilities>) c[1];
+            VideoEncoderSettings settings = VideoEncoderSelector.select((VideoEncoderConfig) c[2], (Integer) c[3],
+                    (Integer) c[4], PROFILE_FRAME_RATE, encoders);
+            assertEquals(name, c[5], settings.mimeType);
+            assertEquals(name, c[6], settings.encoderName);
+            assertEquals(name, (int) (Integer) c[7], settings.frameRate);
+            assertEquals(name, (int) (Integer) c[8], settings.bitrate);
+        }
+    }
+
+    @Test
+    public void estimatesBitrate() {
+        Object[][] cases = {
+                // codec, width, height, frame rate, bits per pixel, bitrate
+                {VideoEncoderConfig.CODEC_H264, 1280, 720, 30, 0.12f, 3318000},
+                {VideoEncoderConfig.CODEC_HEVC, 1280, 720, 30, 0.12f, 1991000},
+                {VideoEncoderConfig.CODEC_H264, 3840, 2160, 60, 0.12f, 59720000},
+                {VideoEncoderConfig.CODEC_H264, 0, 0, 30, 0.12f, 0},
+                {VideoEncoderConfig.CODEC_H264, 8192, 8192, 240, 100f, Integer.MAX_VALUE},
+        };
+        for (Object[] c : cases) {
+            String name = c[0] + " " + c[1] + "x" + c[2] + "@" + c[3];
+            assertEquals(name, (int) (Integer) c[5], VideoEncoderSelector.estimateBitrate((String) c[0],
+                    (Integer) c[1], (Integer) c[2], (Integer) c[3], (Float) c[4]));
+        }
+    }
+
+    @Test
+    public void choosesVideoSize() {
+        Object[][] cases = {
+                // name, encoders, config, index
+                {"1080p encoder", NEXUS_5, ADAPTIVE, 1},
+                {"4K encoder", PIXEL_3, ADAPTIVE, 3},
+                {"4K below the frame rate", PIXEL_3, ADAPTIVE.withFrameRate(60), 1},
+                {"HEVC", PIXEL_3, HEVC, 3},
+                {"HEVC without encoder", NEXUS_5, HEVC, 1},
+                {"no size at the frame rate", NEXUS_5, ADAPTIVE.withFrameRate(120), -1},
+                {"empty table", NONE, ADAPTIVE, -1},
+        };
+        for (Object[] c : cases) {
+            @SuppressWarnings("unchecked")
+            List<VideoEncoderCapabilities> encoders = (List<VideoEncoderCapabilities>) c[1];
+            assertEquals((String) c[0], (int) (Integer) c[3], VideoEncoderSelector.chooseVideoSize(
+                    (VideoEncoderConfig) c[2], VIDEO_RATIO, PROFILE_FRAME_RATE, encoders));
+        }
+    }
+}